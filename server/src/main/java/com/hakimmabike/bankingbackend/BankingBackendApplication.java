@@ -37,7 +37,7 @@ public class BankingBackendApplication {
 		var account = Account.builder()
 				.accountNumber("123456789")
 				.accountType(AccountType.valueOf("SAVINGS"))
-				.balance(BigDecimal.valueOf(1000.0))
+				.balance(Money.of(BigDecimal.valueOf(1000.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 		user.addAccount(account);
@@ -46,7 +46,7 @@ public class BankingBackendApplication {
 		var account2 = Account.builder()
 				.accountNumber("987654321")
 				.accountType(AccountType.valueOf("DEBIT"))
-				.balance(BigDecimal.valueOf(500.0))
+				.balance(Money.of(BigDecimal.valueOf(500.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
@@ -85,14 +85,14 @@ public class BankingBackendApplication {
 		Account savingsAccount = Account.builder()
 				.accountNumber("123456789")
 				.accountType(AccountType.SAVINGS)
-				.balance(BigDecimal.valueOf(1000.0))
+				.balance(Money.of(BigDecimal.valueOf(1000.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
 		Account debitAccount = Account.builder()
 				.accountNumber("987654321")
 				.accountType(AccountType.DEBIT)
-				.balance(BigDecimal.valueOf(500.0))
+				.balance(Money.of(BigDecimal.valueOf(500.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
@@ -139,14 +139,14 @@ public class BankingBackendApplication {
 		Account sourceAccount = Account.builder()
 				.accountNumber("123456789")
 				.accountType(AccountType.SAVINGS)
-				.balance(BigDecimal.valueOf(1000.0))
+				.balance(Money.of(BigDecimal.valueOf(1000.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
 		Account destinationAccount = Account.builder()
 				.accountNumber("987654321")
 				.accountType(AccountType.DEBIT)
-				.balance(BigDecimal.valueOf(500.0))
+				.balance(Money.of(BigDecimal.valueOf(500.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
@@ -168,7 +168,7 @@ public class BankingBackendApplication {
 		Transfer transfer = Transfer.builder()
 				.senderAccount(sourceAccount)
 				.receiverAccount(destinationAccount)
-				.amount(BigDecimal.valueOf(200.0))
+				.amount(Money.of(BigDecimal.valueOf(200.0)))
 				.status(TransactionStatus.PENDING)
 				.description("Transfer from savings to debit")
 				.build();
@@ -176,8 +176,8 @@ public class BankingBackendApplication {
 		// Create transactions for the transfer
 		Transaction debitTransaction = Transaction.builder()
 				.account(sourceAccount)
-				.amount(BigDecimal.valueOf(-200.0))
-				.balanceAfterTransaction(sourceAccount.getBalance().subtract(BigDecimal.valueOf(500.0)).doubleValue())
+				.amount(Money.of(BigDecimal.valueOf(-200.0)))
+				.balanceAfterTransaction(sourceAccount.getBalance().minus(Money.of(BigDecimal.valueOf(500.0))))
 				.transactionCategory(transferCategory)
 				.description("Transfer to " + destinationAccount.getAccountNumber())
 				.status(TransactionStatus.COMPLETED)
@@ -186,8 +186,8 @@ public class BankingBackendApplication {
 
 		Transaction creditTransaction = Transaction.builder()
 				.account(destinationAccount)
-				.amount(BigDecimal.valueOf(200.0))
-				.balanceAfterTransaction(destinationAccount.getBalance().add(BigDecimal.valueOf(200.0)).doubleValue())
+				.amount(Money.of(BigDecimal.valueOf(200.0)))
+				.balanceAfterTransaction(destinationAccount.getBalance().plus(Money.of(BigDecimal.valueOf(200.0))))
 				.transactionCategory(transferCategory)
 				.description("Transfer from " + sourceAccount.getAccountNumber())
 				.status(TransactionStatus.COMPLETED)
@@ -210,7 +210,7 @@ public class BankingBackendApplication {
 		Account account = Account.builder()
 				.accountNumber("123456789")
 				.accountType(AccountType.SAVINGS)
-				.balance(BigDecimal.valueOf(1000.0))
+				.balance(Money.of(BigDecimal.valueOf(1000.0)))
 				.status(AccountStatus.OPEN)
 				.build();
 
@@ -234,8 +234,8 @@ public class BankingBackendApplication {
 				.account(account)
 				.transactionNumber("DEP-001")
 				.transactionType(String.valueOf(TransactionType.DEPOSIT))
-				.amount(BigDecimal.valueOf(2500.0))
-				.balanceAfterTransaction(account.getBalance().add(BigDecimal.valueOf(2500.0)).doubleValue())
+				.amount(Money.of(BigDecimal.valueOf(2500.0)))
+				.balanceAfterTransaction(account.getBalance().plus(Money.of(BigDecimal.valueOf(2500.0))))
 				.description("Monthly salary deposit")
 				.status(TransactionStatus.COMPLETED)
 				.transactionDate(LocalDateTime.now())
@@ -246,8 +246,8 @@ public class BankingBackendApplication {
 				.account(account)
 				.transactionNumber("BILL-001")
 				.transactionType(String.valueOf(TransactionType.WITHDRAWAL))
-				.amount(BigDecimal.valueOf(-150.0))
-				.balanceAfterTransaction(account.getBalance().subtract(BigDecimal.valueOf(150.0)).doubleValue())
+				.amount(Money.of(BigDecimal.valueOf(-150.0)))
+				.balanceAfterTransaction(account.getBalance().minus(Money.of(BigDecimal.valueOf(150.0))))
 				.description("Electricity bill payment")
 				.status(TransactionStatus.COMPLETED)
 				.transactionDate(LocalDateTime.now())
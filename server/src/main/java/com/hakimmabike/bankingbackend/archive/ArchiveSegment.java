@@ -0,0 +1,264 @@
+package com.hakimmabike.bankingbackend.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * An immutable file holding archived transactions of one account, newest first. Rows are grouped in blocks
+ * that are deflated separately, and a block index at the end of the file keeps each block's offset and the
+ * keys of its newest and oldest row, so a read only decompresses the blocks it needs.
+ *
+ * The file is memory-mapped. Blocks are inflated straight from the mapping, the compressed bytes are never
+ * copied onto the heap.
+ *
+ * Layout: block*, index entry per block (offset, compressed length, uncompressed length, row count, newest
+ * key, oldest key), then the footer (block count, index offset, magic, version).
+ */
+public final class ArchiveSegment {
+    private static final int MAGIC = 0x42415347; // "BASG"
+    private static final int VERSION = 1;
+    private static final int INDEX_ENTRY_BYTES = 4 * 4 + 4 * 8;
+    private static final int FOOTER_BYTES = 4 + 8 + 4 + 4;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final Block[] blocks;
+
+    private ArchiveSegment(Path path, MappedByteBuffer buffer, Block[] blocks) {
+        this.path = path;
+        this.buffer = buffer;
+        this.blocks = blocks;
+    }
+
+    // Write rows, sorted newest first, to a new file and flush it to disk
+    static void write(Path path, List<ArchivedTransaction> newestFirst, int blockSize) throws IOException {
+        if (newestFirst.isEmpty()) {
+            throw new IllegalArgumentException("An archive segment needs at least one row");
+        }
+        var deflater = new Deflater();
+        try (var file = new FileOutputStream(path.toFile())) {
+            var out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            var raw = new ByteArrayOutputStream();
+            var rawData = new DataOutputStream(raw);
+            var index = ByteBuffer.allocate(((newestFirst.size() + blockSize - 1) / blockSize) * INDEX_ENTRY_BYTES);
+            byte[] chunk = new byte[16 * 1024];
+            int offset = 0;
+
+            for (int start = 0; start < newestFirst.size(); start += blockSize) {
+                List<ArchivedTransaction> rows = newestFirst.subList(start, Math.min(start + blockSize, newestFirst.size()));
+                raw.reset();
+                for (ArchivedTransaction row : rows) {
+                    encode(rawData, row);
+                }
+                rawData.flush();
+
+                deflater.reset();
+                deflater.setInput(raw.toByteArray());
+                deflater.finish();
+                int compressed = 0;
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(chunk);
+                    out.write(chunk, 0, n);
+                    compressed += n;
+                }
+
+                ArchivedTransaction newest = rows.get(0);
+                ArchivedTransaction oldest = rows.get(rows.size() - 1);
+                index.putInt(offset).putInt(compressed).putInt(raw.size()).putInt(rows.size())
+                        .putLong(newest.dateMicros()).putLong(newest.id())
+                        .putLong(oldest.dateMicros()).putLong(oldest.id());
+                offset = Math.addExact(offset, compressed);
+            }
+
+            out.write(index.array());
+            out.writeInt(index.capacity() / INDEX_ENTRY_BYTES);
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+            // The database rows are deleted once this returns, the file must survive a crash by then
+            file.getChannel().force(true);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static ArchiveSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int footer = buffer.limit() - FOOTER_BYTES;
+            if (footer < 0 || buffer.getInt(footer + 12) != MAGIC || buffer.getInt(footer + 16) != VERSION) {
+                throw new IOException("Not an archive segment: " + path);
+            }
+            int blockCount = buffer.getInt(footer);
+            int indexOffset = Math.toIntExact(buffer.getLong(footer + 4));
+            var blocks = new Block[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                int entry = indexOffset + i * INDEX_ENTRY_BYTES;
+                blocks[i] = new Block(buffer.getInt(entry), buffer.getInt(entry + 4), buffer.getInt(entry + 8),
+                        buffer.getInt(entry + 12), buffer.getLong(entry + 16), buffer.getLong(entry + 24),
+                        buffer.getLong(entry + 32), buffer.getLong(entry + 40));
+            }
+            return new ArchiveSegment(path, buffer, blocks);
+        }
+    }
+
+    // Add up to limit rows matching filter to out, newest first, only rows before the key (beforeMicros, beforeId)
+    // when bounded. Returns how many rows were added.
+    int collectNewestFirst(boolean bounded, long beforeMicros, long beforeId, Predicate<ArchivedTransaction> filter,
+                           int limit, List<ArchivedTransaction> out) {
+        int added = 0;
+        for (Block block : blocks) {
+            if (bounded && ArchivedTransaction.compareKeys(block.oldestMicros, block.oldestId, beforeMicros, beforeId) >= 0) {
+                // Every row of this block is at or after the bound
+                continue;
+            }
+            for (ArchivedTransaction row : decode(block)) {
+                if (bounded && ArchivedTransaction.compareKeys(row.dateMicros(), row.id(), beforeMicros, beforeId) >= 0) {
+                    continue;
+                }
+                if (filter.test(row)) {
+                    out.add(row);
+                    if (++added == limit) {
+                        return added;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    // All rows oldest first, decompressing one block at a time
+    Iterator<ArchivedTransaction> oldestFirst() {
+        return new Iterator<>() {
+            private int nextBlock = blocks.length - 1;
+            private List<ArchivedTransaction> rows = Collections.emptyList();
+            private int nextRow = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (nextRow < 0 && nextBlock >= 0) {
+                    rows = decode(blocks[nextBlock--]);
+                    nextRow = rows.size() - 1;
+                }
+                return nextRow >= 0;
+            }
+
+            @Override
+            public ArchivedTransaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return rows.get(nextRow--);
+            }
+        };
+    }
+
+    private List<ArchivedTransaction> decode(Block block) {
+        byte[] raw = new byte[block.uncompressedLength];
+        var inflater = new Inflater();
+        try {
+            // Reads the compressed block from the mapped file itself
+            inflater.setInput(buffer.slice(block.offset, block.compressedLength));
+            int length = 0;
+            while (length < raw.length) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated block in archive segment " + path);
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block in archive segment " + path, e);
+        } finally {
+            inflater.end();
+        }
+
+        var data = ByteBuffer.wrap(raw);
+        List<ArchivedTransaction> rows = new ArrayList<>(block.rowCount);
+        for (int i = 0; i < block.rowCount; i++) {
+            rows.add(decode(data, raw));
+        }
+        return rows;
+    }
+
+    private static void encode(DataOutputStream out, ArchivedTransaction row) throws IOException {
+        out.writeLong(row.id());
+        out.writeLong(row.dateMicros());
+        writeString(out, row.transactionNumber());
+        writeString(out, row.transactionType());
+        writeString(out, row.amount() == null ? null : row.amount().toPlainString());
+        writeString(out, row.balanceAfter() == null ? null : row.balanceAfter().toPlainString());
+        writeString(out, row.categoryName());
+        writeString(out, row.description());
+        writeString(out, row.code());
+        out.writeByte((row.sender() ? 1 : 0) | (row.receiver() ? 2 : 0));
+        writeString(out, row.accountNumber());
+        writeString(out, row.status());
+    }
+
+    private static ArchivedTransaction decode(ByteBuffer data, byte[] raw) {
+        long id = data.getLong();
+        long dateMicros = data.getLong();
+        String transactionNumber = readString(data, raw);
+        String transactionType = readString(data, raw);
+        String amount = readString(data, raw);
+        String balanceAfter = readString(data, raw);
+        String categoryName = readString(data, raw);
+        String description = readString(data, raw);
+        String code = readString(data, raw);
+        byte flags = data.get();
+        String accountNumber = readString(data, raw);
+        String status = readString(data, raw);
+        return new ArchivedTransaction(id, transactionNumber, transactionType,
+                amount == null ? null : new BigDecimal(amount),
+                balanceAfter == null ? null : new BigDecimal(balanceAfter),
+                categoryName, description, code, (flags & 1) != 0, (flags & 2) != 0, accountNumber, status,
+                ArchivedTransaction.fromMicros(dateMicros));
+    }
+
+    // Length-prefixed UTF-8, -1 for null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer data, byte[] raw) {
+        int length = data.getInt();
+        if (length < 0) {
+            return null;
+        }
+        var value = new String(raw, data.position(), length, StandardCharsets.UTF_8);
+        data.position(data.position() + length);
+        return value;
+    }
+
+    private record Block(int offset, int compressedLength, int uncompressedLength, int rowCount,
+                         long newestMicros, long newestId, long oldestMicros, long oldestId) {
+    }
+}
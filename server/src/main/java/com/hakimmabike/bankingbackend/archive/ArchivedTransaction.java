@@ -0,0 +1,40 @@
+package com.hakimmabike.bankingbackend.archive;
+
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+// A transaction row as stored in an archive segment, the category is kept by name
+public record ArchivedTransaction(long id, String transactionNumber, String transactionType, BigDecimal amount,
+                                  BigDecimal balanceAfter, String categoryName, String description, String code,
+                                  boolean sender, boolean receiver, String accountNumber, String status,
+                                  LocalDateTime transactionDate) {
+
+    public TransactionDto toDto() {
+        return new TransactionDto(id, transactionNumber, transactionType, amount, balanceAfter, categoryName,
+                description, code, sender, receiver, accountNumber);
+    }
+
+    // Position of the row in history order, (transaction_date, id) with the date in microseconds like Postgres
+    long dateMicros() {
+        return toMicros(transactionDate);
+    }
+
+    static long toMicros(LocalDateTime dateTime) {
+        return ChronoUnit.MICROS.between(LocalDateTime.of(1970, 1, 1, 0, 0), dateTime);
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000), (int) Math.floorMod(micros, 1_000_000) * 1000,
+                ZoneOffset.UTC);
+    }
+
+    // Negative if the key (aMicros, aId) comes before (bMicros, bId) in history order
+    static int compareKeys(long aMicros, long aId, long bMicros, long bId) {
+        int byDate = Long.compare(aMicros, bMicros);
+        return byDate != 0 ? byDate : Long.compare(aId, bId);
+    }
+}
@@ -0,0 +1,237 @@
+package com.hakimmabike.bankingbackend.archive;
+
+import com.hakimmabike.bankingbackend.config.ArchiveConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Archived transactions on disk, one directory per account id holding that account's segment files. The
+ * directory is shared by every instance, and the archive_segments table says which files belong to the
+ * archive: a segment is listed by the transaction that deletes its rows from the database, so a reader that
+ * lists the segments in the same statement or snapshot as it reads the table sees every transaction once,
+ * whichever instance moved it.
+ *
+ * Segment files are written before they are listed and carry the node id of the instance that wrote them,
+ * so an instance only ever cleans up unlisted files of its own.
+ */
+@Component
+public class TransactionArchive {
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Comparator<ArchivedTransaction> OLDEST_FIRST = Comparator
+            .comparingLong(ArchivedTransaction::dateMicros)
+            .thenComparingLong(ArchivedTransaction::id);
+
+    private final Path root;
+    private final int blockSize;
+    private final String nodeSuffix;
+    private final JdbcTemplate jdbcTemplate;
+    // Segments opened so far, a listed segment file never changes
+    private final Map<Path, ArchiveSegment> opened = new ConcurrentHashMap<>();
+
+    public TransactionArchive(ArchiveConfig config, @Value("${banking.node-id}") int nodeId,
+                              JdbcTemplate jdbcTemplate) {
+        this.root = Path.of(config.getDirectory());
+        this.blockSize = config.getBlockSize();
+        this.nodeSuffix = String.format("-n%04d%s", nodeId, SEGMENT_SUFFIX);
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // A segment file of an account as listed in archive_segments
+    public record SegmentRef(long accountId, String fileName) {
+    }
+
+    // Write rows (newest first) to a new segment file, which is not part of the archive until list() commits
+    public Path write(long accountId, List<ArchivedTransaction> newestFirst) throws IOException {
+        Path directory = Files.createDirectories(root.resolve(Long.toString(accountId)));
+        ArchivedTransaction oldest = newestFirst.get(newestFirst.size() - 1);
+        // Named after the oldest row, so names sort in history order and never repeat
+        Path file = directory.resolve(String.format("%020d-%020d%s", oldest.dateMicros(), oldest.id(), nodeSuffix));
+        try {
+            ArchiveSegment.write(file, newestFirst, blockSize);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    // List a written segment as part of the current transaction, the file is deleted again if it rolls back
+    public void list(long accountId, Path file, List<ArchivedTransaction> newestFirst) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    delete(file);
+                }
+            }
+        });
+        ArchivedTransaction oldest = newestFirst.get(newestFirst.size() - 1);
+        jdbcTemplate.update("INSERT INTO archive_segments (account_id, file_name, row_count, oldest_date, oldest_id) " +
+                        "VALUES (?, ?, ?, ?, ?)",
+                accountId, file.getFileName().toString(), newestFirst.size(),
+                Timestamp.valueOf(oldest.transactionDate()), oldest.id());
+    }
+
+    public boolean isListed(long accountId, Path file) {
+        Integer listed = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM archive_segments WHERE account_id = ? AND file_name = ?",
+                Integer.class, accountId, file.getFileName().toString());
+        return listed != null && listed > 0;
+    }
+
+    public void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Segment files written by this instance that aren't listed, with the id of the account they belong to.
+    // A move still in flight has files in here too, callers check again under the account's lock.
+    public Map<Path, Long> findUnlistedOwnFiles() {
+        Set<String> listed = new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT file_name FROM archive_segments WHERE file_name LIKE ?", String.class, "%" + nodeSuffix));
+        Map<Path, Long> unlisted = new HashMap<>();
+        for (Path directory : accountDirectories()) {
+            long accountId = Long.parseLong(directory.getFileName().toString());
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(nodeSuffix))
+                        .filter(file -> !listed.contains(file.getFileName().toString()))
+                        .forEach(file -> unlisted.put(file, accountId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return unlisted;
+    }
+
+    // The listed segments of the user's accounts, or of one of them when accountNumber isn't null
+    public List<SegmentRef> listSegments(Long userId, String accountNumber) {
+        String sql = "SELECT s.account_id, s.file_name FROM archive_segments s JOIN accounts a ON a.id = s.account_id " +
+                "WHERE a.user_id = ?" + (accountNumber == null ? "" : " AND a.account_number = ?");
+        Object[] params = accountNumber == null ? new Object[]{userId} : new Object[]{userId, accountNumber};
+        return jdbcTemplate.query(sql, (rs, i) -> new SegmentRef(rs.getLong("account_id"), rs.getString("file_name")),
+                params);
+    }
+
+    // Up to limit archived rows of the given segments matching filter, newest first and before (beforeDate, beforeId)
+    // when beforeDate is given
+    public List<ArchivedTransaction> readNewestFirst(Collection<SegmentRef> segments, LocalDateTime beforeDate,
+                                                     long beforeId, Predicate<ArchivedTransaction> filter, int limit) {
+        boolean bounded = beforeDate != null;
+        long beforeMicros = bounded ? ArchivedTransaction.toMicros(beforeDate) : 0;
+        List<ArchivedTransaction> rows = new ArrayList<>();
+        for (List<ArchiveSegment> accountSegments : byAccountOldestFirst(segments).values()) {
+            int found = 0;
+            // Newest segment first, an account's segments don't overlap so older ones can't have newer rows
+            for (int i = accountSegments.size() - 1; i >= 0 && found < limit; i--) {
+                found += accountSegments.get(i).collectNewestFirst(bounded, beforeMicros, beforeId, filter, limit - found, rows);
+            }
+        }
+        rows.sort(OLDEST_FIRST.reversed());
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+
+    // The given segments opened for reading
+    public Snapshot snapshot(Collection<SegmentRef> segments) {
+        List<ArchiveSegment> snapshot = new ArrayList<>();
+        byAccountOldestFirst(segments).values().forEach(snapshot::addAll);
+        return new Snapshot(List.copyOf(snapshot));
+    }
+
+    public record Snapshot(List<ArchiveSegment> segments) {
+        // Every archived row of the snapshot oldest first, merged across accounts
+        public Iterator<ArchivedTransaction> oldestFirst() {
+            PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::row, OLDEST_FIRST));
+            for (ArchiveSegment segment : segments) {
+                Iterator<ArchivedTransaction> rows = segment.oldestFirst();
+                if (rows.hasNext()) {
+                    heads.add(new Head(rows.next(), rows));
+                }
+            }
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return !heads.isEmpty();
+                }
+
+                @Override
+                public ArchivedTransaction next() {
+                    Head head = heads.remove();
+                    if (head.rest().hasNext()) {
+                        heads.add(new Head(head.rest().next(), head.rest()));
+                    }
+                    return head.row();
+                }
+            };
+        }
+    }
+
+    private record Head(ArchivedTransaction row, Iterator<ArchivedTransaction> rest) {
+    }
+
+    // Open segments grouped by account, each account's oldest first
+    private Map<Long, List<ArchiveSegment>> byAccountOldestFirst(Collection<SegmentRef> segments) {
+        Map<Long, List<SegmentRef>> byAccount = new LinkedHashMap<>();
+        for (SegmentRef segment : segments) {
+            byAccount.computeIfAbsent(segment.accountId(), id -> new ArrayList<>()).add(segment);
+        }
+        Map<Long, List<ArchiveSegment>> opened = new LinkedHashMap<>();
+        byAccount.forEach((accountId, refs) -> opened.put(accountId, refs.stream()
+                // File names start with the oldest row's key, so name order is history order
+                .sorted(Comparator.comparing(SegmentRef::fileName))
+                .map(this::open)
+                .toList()));
+        return opened;
+    }
+
+    private ArchiveSegment open(SegmentRef segment) {
+        Path file = root.resolve(Long.toString(segment.accountId())).resolve(segment.fileName());
+        return opened.computeIfAbsent(file, path -> {
+            try {
+                return ArchiveSegment.open(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private List<Path> accountDirectories() {
+        if (!Files.isDirectory(root)) {
+            return List.of();
+        }
+        try (Stream<Path> directories = Files.list(root)) {
+            return directories
+                    .filter(Files::isDirectory)
+                    .filter(directory -> directory.getFileName().toString().chars().allMatch(Character::isDigit))
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.hakimmabike.bankingbackend.cache;
+
+import com.hakimmabike.bankingbackend.config.AccountDirectoryConfig;
+import com.hakimmabike.bankingbackend.dto.account.AccountDirectoryView;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Near-cache of account number -> (id, owner, status, type), so existence, ownership and closed checks
+ * don't need the database. Balances are never cached. Entries are dropped when the account is created or
+ * its status changes on this instance, and expire after a short TTL to pick up changes made elsewhere.
+ * A row read before an invalidation is not cached after it: every invalidation bumps a stamp, and an entry
+ * loaded under an older stamp is dropped again instead of overwriting the invalidation with a stale status.
+ *
+ * Metrics:
+ *  - banking.account.directory.hits    lookups answered from memory
+ *  - banking.account.directory.misses  lookups that went to the database
+ *  - banking.account.directory.lookup  lookup latency, hits and misses together
+ *  - banking.account.directory.size    entries held
+ * The hit rate is hits / (hits + misses).
+ */
+@Component
+public class AccountDirectory {
+    private final AccountRepository accountRepository;
+    private final AccountDirectoryConfig config;
+    private final BoundedCache<String, Entry> cache;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer lookups;
+    // Bumped by every invalidation, see put(Entry, long)
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public AccountDirectory(AccountRepository accountRepository, AccountDirectoryConfig config,
+                            MeterRegistry meterRegistry) {
+        this.accountRepository = accountRepository;
+        this.config = config;
+        this.cache = new BoundedCache<>(config.getMaxSize());
+        this.hits = meterRegistry.counter("banking.account.directory.hits");
+        this.misses = meterRegistry.counter("banking.account.directory.misses");
+        this.lookups = meterRegistry.timer("banking.account.directory.lookup");
+        Gauge.builder("banking.account.directory.size", cache, BoundedCache::size).register(meterRegistry);
+    }
+
+    public Optional<Entry> find(String accountNumber) {
+        if (accountNumber == null) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        try {
+            Entry entry = cache.get(accountNumber);
+            if (entry != null) {
+                hits.increment();
+                return Optional.of(entry);
+            }
+            misses.increment();
+            long stamp = invalidationStamp();
+            Optional<Entry> loaded = accountRepository.findDirectoryViewByAccountNumber(accountNumber)
+                    .map(Entry::of);
+            loaded.ifPresent(e -> put(e, stamp));
+            return loaded;
+        } finally {
+            lookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public boolean exists(String accountNumber) {
+        return find(accountNumber).isPresent();
+    }
+
+    public boolean isOwnedBy(String accountNumber, Long userId) {
+        return find(accountNumber).map(entry -> entry.userId().equals(userId)).orElse(false);
+    }
+
+    public boolean isClosed(String accountNumber) {
+        return find(accountNumber).map(entry -> entry.status() == AccountStatus.CLOSED).orElse(false);
+    }
+
+    // Take before reading an entry from the database, and hand to put() with it
+    public long invalidationStamp() {
+        return invalidations.get();
+    }
+
+    // Store an entry read elsewhere, e.g. together with balances. stamp is invalidationStamp() from before the read.
+    public void put(Entry entry, long stamp) {
+        cache.put(entry.accountNumber(), entry, System.currentTimeMillis() + config.getTtl().toMillis());
+        // Checked after the put: an invalidation that came in meanwhile either sees the entry and removes it,
+        // or has already bumped the stamp and it is removed here. The stamp is shared by all accounts,
+        // so an unrelated invalidation costs at most one extra miss.
+        if (invalidations.get() != stamp) {
+            cache.invalidate(entry.accountNumber());
+        }
+    }
+
+    // Call once the change is committed, a read before that may still see the old row and cache it
+    public void invalidate(String accountNumber) {
+        invalidations.incrementAndGet();
+        cache.invalidate(accountNumber);
+    }
+
+    public record Entry(Long id, String accountNumber, Long userId, AccountStatus status, AccountType accountType) {
+        private static Entry of(AccountDirectoryView view) {
+            return new Entry(view.getId(), view.getAccountNumber(), view.getUserId(), view.getStatus(),
+                    view.getAccountType());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.hakimmabike.bankingbackend.cache;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small thread-safe in-memory cache with a size bound and per-entry expiry. Reads are lock-free.
+ * When the cache grows past its bound the oldest inserted keys are evicted first.
+ */
+public class BoundedCache<K, V> {
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+    // Length of insertionOrder, which also holds keys that expired or were invalidated since they were added
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public BoundedCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    // Returns the cached value, or null if it is missing or expired
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public void put(K key, V value, long expiresAtMillis) {
+        if (entries.put(key, new Entry<>(value, expiresAtMillis)) == null) {
+            insertionOrder.add(key);
+            if (queued.incrementAndGet() > 2 * maxSize) {
+                dropStaleKeys();
+            }
+        }
+        while (entries.size() > maxSize) {
+            K oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            queued.decrementAndGet();
+            entries.remove(oldest);
+        }
+    }
+
+    // Cache a value that only leaves the cache through eviction or invalidation
+    public void put(K key, V value) {
+        put(key, value, Long.MAX_VALUE);
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        insertionOrder.clear();
+        queued.set(0);
+    }
+
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> e.getValue().expiresAtMillis <= now);
+        dropStaleKeys();
+    }
+
+    // Forget queued keys that are no longer cached, and repeats of keys that were removed and cached again
+    private void dropStaleKeys() {
+        Set<K> seen = new HashSet<>();
+        insertionOrder.removeIf(key -> !entries.containsKey(key) || !seen.add(key));
+        queued.set(insertionOrder.size());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private record Entry<V>(V value, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,126 @@
+package com.hakimmabike.bankingbackend.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.dto.transactionCategory.TransactionCategoryDto;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.mappers.TransactionMapper;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * All transaction categories, held in memory. Categories are read on every deposit and withdrawal but
+ * almost never change, so the whole table is loaded into an immutable snapshot that is swapped in one step
+ * whenever it is reloaded: at startup, after a category is created, periodically (for categories created
+ * on another instance) and when a name is missing from it but found in the table. A name that is in neither
+ * is remembered as missing until the next reload, so repeated requests with an unknown category don't query
+ * the table every time. The JSON for the list endpoint is serialized once per snapshot.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransactionCategoryCache {
+    // Bounds the names remembered as missing per snapshot, past that unknown names are looked up every time
+    private static final int MAX_MISSING_NAMES = 10_000;
+
+    private final TransactionCategoryRepository categoryRepository;
+    private final TransactionMapper transactionMapper;
+    private final ObjectMapper objectMapper;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${banking.category-cache.refresh-interval-ms:300000}",
+            initialDelayString = "${banking.category-cache.refresh-interval-ms:300000}")
+    public void refresh() {
+        List<TransactionCategory> categories = categoryRepository.findAll();
+        Map<String, TransactionCategory> byName = new LinkedHashMap<>();
+        for (TransactionCategory category : categories) {
+            byName.put(category.getName(), detachedCopy(category));
+        }
+        List<TransactionCategoryDto> dtos = byName.values().stream()
+                .map(transactionMapper::toCategoryDto)
+                .toList();
+        try {
+            snapshot.set(new Snapshot(Map.copyOf(byName), dtos, objectMapper.writeValueAsBytes(dtos),
+                    ConcurrentHashMap.newKeySet()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize transaction categories", e);
+        }
+    }
+
+    // The category as a detached entity, only to be used as a reference when saving a transaction
+    public Optional<TransactionCategory> find(String name) {
+        if (name == null) {
+            return Optional.empty();
+        }
+        Snapshot current = current();
+        TransactionCategory category = current.byName.get(name);
+        if (category != null || current.missing.contains(name)) {
+            return Optional.ofNullable(category);
+        }
+        if (categoryRepository.existsByName(name)) {
+            // Created on another instance since the last refresh
+            refresh();
+            category = current().byName.get(name);
+        } else if (current.missing.size() < MAX_MISSING_NAMES) {
+            current.missing.add(name);
+        }
+        return Optional.ofNullable(category);
+    }
+
+    public boolean exists(String name) {
+        return find(name).isPresent();
+    }
+
+    public List<TransactionCategoryDto> findAll() {
+        return current().dtos;
+    }
+
+    // GET /api/transaction-categories body, already serialized
+    public byte[] findAllAsJson() {
+        return current().json;
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            // Used before the application finished starting up
+            refresh();
+            current = snapshot.get();
+        }
+        return current;
+    }
+
+    // A copy that no persistence context knows about, so it can be shared between threads
+    private static TransactionCategory detachedCopy(TransactionCategory category) {
+        return TransactionCategory.builder()
+                .id(category.getId())
+                .name(category.getName())
+                .description(category.getDescription())
+                .categoryType(category.getCategoryType())
+                .isSystem(category.isSystem())
+                .createdAt(category.getCreatedAt())
+                .build();
+    }
+
+    // missing: names looked up in the table and not found since this snapshot was loaded
+    private record Snapshot(Map<String, TransactionCategory> byName, List<TransactionCategoryDto> dtos, byte[] json,
+                            Set<String> missing) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.account-directory")
+@Data
+public class AccountDirectoryConfig {
+    private int maxSize = 100_000; // accounts kept in memory, the oldest entries are evicted first
+    private Duration ttl = Duration.ofSeconds(60); // bounds how long a change made on another instance can go unseen
+}
@@ -0,0 +1,18 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.archive")
+@Data
+public class ArchiveConfig {
+    private boolean enabled = false; // move old transactions out of the database into segment files
+    private String directory = "archive"; // where segment files are kept, one sub-directory per account
+    private Duration hotWindow = Duration.ofDays(90); // transactions younger than this stay in the database
+    private int maxRowsPerSegment = 100_000; // transactions written to one segment file
+    private int blockSize = 256; // transactions per compressed block, the unit a read decompresses
+}
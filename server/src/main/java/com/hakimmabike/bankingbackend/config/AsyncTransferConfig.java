@@ -0,0 +1,19 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.async-transfers")
+@Data
+public class AsyncTransferConfig {
+    private boolean enabled = false; // run workers applying pending transfers on this instance
+    private int workers = 2; // threads applying pending transfers
+    private int batchSize = 50; // pending transfers claimed and committed together
+    private long pollIntervalMs = 200; // how long an idle worker waits before looking for new work
+    private Duration claimTimeout = Duration.ofSeconds(60); // lease on claimed transfers, after it another worker may retry them
+    private int maxAttempts = 5; // claims of a transfer that keeps failing unexpectedly before it is marked FAILED
+}
@@ -0,0 +1,13 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.balance-shards")
+@Data
+public class BalanceShardConfig {
+    private int maxShards = 64; // upper limit for the number of sub-balances of one account
+    private boolean compactionEnabled = true; // periodically fold sub-balances back into the account row
+}
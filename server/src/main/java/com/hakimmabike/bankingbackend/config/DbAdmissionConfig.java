@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.db-admission")
+@Data
+public class DbAdmissionConfig {
+    private boolean enabled = true; // limit how many API requests use the database at once
+    private int permits = 0; // concurrent API requests, 0 means the Hikari maximum pool size
+    private Duration maxWait = Duration.ofSeconds(5); // wait for a permit before answering 503, keep below Hikari's connection-timeout
+}
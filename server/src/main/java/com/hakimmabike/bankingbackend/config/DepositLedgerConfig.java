@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.deposit-ledger")
+@Data
+public class DepositLedgerConfig {
+    private boolean enabled = false; // group-commit deposits through a single writer thread
+    private int queueCapacity = 10000; // pending deposits before callers are turned away
+    private int batchSize = 256; // max deposits committed together in one DB transaction
+    private long flushIntervalMs = 5; // how long the writer waits for a group to fill before committing it
+    private long offerTimeoutMs = 50; // how long a caller waits for queue space before getting a 503
+}
@@ -0,0 +1,12 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.export")
+@Data
+public class ExportConfig {
+    private int maxConcurrent = 2; // exports running at once, each one holds a DB connection until it finishes
+}
@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.idempotency")
+@Data
+public class IdempotencyConfig {
+    private Duration ttl = Duration.ofHours(24); // how long a stored response can be replayed
+    private int cacheSize = 100_000; // responses kept in memory in front of the idempotency_keys table
+    private Duration claimTimeout = Duration.ofSeconds(60); // lease of a running request on its key, retries get 409 until it runs out
+}
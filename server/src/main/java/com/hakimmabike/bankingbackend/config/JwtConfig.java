@@ -1,7 +1,12 @@
 package com.hakimmabike.bankingbackend.config;
 
 import io.jsonwebtoken.security.Keys;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -14,8 +19,26 @@ public class JwtConfig {
     private String secret;
     private int accessTokenExpiration; // in seconds
     private int refreshTokenExpiration; // in seconds
+    private int verifiedTokenCacheSize = 10_000; // verified tokens kept in memory, 0 disables the cache
+
+    // Built once from the secret instead of on every call
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private volatile SecretKey secretKey;
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+        this.secretKey = null;
+    }
 
     public SecretKey getSecretKey() {
-        return Keys.hmacShaKeyFor(secret.getBytes());
+        SecretKey key = secretKey;
+        if (key == null) {
+            key = Keys.hmacShaKeyFor(secret.getBytes());
+            secretKey = key;
+        }
+        return key;
     }
 }
@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.lanes")
+@Data
+public class LaneConfig {
+    private boolean enabled = false; // route deposits, withdrawals and transfers through single-writer lanes
+    private int count = 4; // number of lanes (one thread each)
+    private int queueCapacity = 1024; // pending tasks per lane before callers have to wait
+    private int batchSize = 32; // max tasks committed together in one DB transaction
+    private long offerTimeoutMs = 100; // how long a caller waits for space in a full lane before getting a 503
+}
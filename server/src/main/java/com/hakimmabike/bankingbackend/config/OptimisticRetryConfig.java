@@ -0,0 +1,14 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.optimistic-retry")
+@Data
+public class OptimisticRetryConfig {
+    private int maxAttempts = 5; // total attempts, including the first one
+    private long baseBackoffMs = 5; // backoff before the first retry, doubled on each retry
+    private long maxBackoffMs = 200; // upper bound for a single backoff
+}
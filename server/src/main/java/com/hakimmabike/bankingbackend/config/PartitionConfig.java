@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.partitions")
+@Data
+public class PartitionConfig {
+    private int monthsAhead = 3; // monthly partitions created ahead of the current month
+    private int detachAfterMonths = 0; // months after which a partition is detached, 0 keeps every partition attached
+    private Duration lockTimeout = Duration.ofSeconds(5); // how long a detach waits for running queries before giving up until the next run
+}
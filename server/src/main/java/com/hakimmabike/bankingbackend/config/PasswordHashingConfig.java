@@ -0,0 +1,13 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.password-hashing")
+@Data
+public class PasswordHashingConfig {
+    private int threads = 0; // threads hashing and checking passwords, 0 means one per CPU core
+    private int queueCapacity = 64; // hashes waiting for a thread before new ones are turned away with 503
+}
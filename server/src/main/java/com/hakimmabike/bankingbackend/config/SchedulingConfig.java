@@ -0,0 +1,10 @@
+package com.hakimmabike.bankingbackend.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Enables the @Scheduled maintenance jobs
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
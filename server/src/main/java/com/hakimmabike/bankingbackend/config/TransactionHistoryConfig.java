@@ -0,0 +1,14 @@
+package com.hakimmabike.bankingbackend.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConfigurationProperties(prefix = "banking.transaction-history")
+@Data
+public class TransactionHistoryConfig {
+    private int defaultPageSize = 50; // transactions per history page when no size is given
+    private int maxPageSize = 500; // largest page a client may ask for
+    private int listLimit = 100; // most recent transactions returned by the old unpaged list endpoint by default
+}
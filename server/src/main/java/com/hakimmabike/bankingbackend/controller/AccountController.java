@@ -1,15 +1,20 @@
 package com.hakimmabike.bankingbackend.controller;
 
+import com.hakimmabike.bankingbackend.config.BalanceShardConfig;
 import com.hakimmabike.bankingbackend.dto.account.*;
 import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
 import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
 import com.hakimmabike.bankingbackend.enums.AccountStatus;
 import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
 import com.hakimmabike.bankingbackend.repository.AccountRepository;
 import com.hakimmabike.bankingbackend.repository.UserRepository;
 import com.hakimmabike.bankingbackend.services.AccountService;
+import com.hakimmabike.bankingbackend.services.OptimisticRetryTemplate;
 import com.hakimmabike.bankingbackend.services.TransactionService;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +22,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 @RestController
 @AllArgsConstructor
@@ -26,6 +32,8 @@ public class AccountController {
     private final TransactionService transactionService;
     private final AccountRepository accountRepository;
     private final UserRepository userRepository;
+    private final OptimisticRetryTemplate optimisticRetry;
+    private final BalanceShardConfig balanceShardConfig;
 
     // Create a new account
     @PostMapping("/{userId}")
@@ -89,41 +97,56 @@ public class AccountController {
                     .body("Invalid account status: " + request.getStatus());
         }
 
-        // Check if account is closed
-        if (request.getStatus().equalsIgnoreCase("CLOSED")) {
-            if (accountRepository.findById(accountId).orElseThrow().getStatus() == AccountStatus.CLOSED) {
-                return ResponseEntity.status(HttpStatus.CONFLICT)
-                        .body("Account with ID " + accountId + " is already closed.");
-            }
-        }
-
         // Check if status is blank
         if (request.getStatus() == null || request.getStatus().isBlank()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body("Account status cannot be blank.");
         }
 
-        AccountDto updatedAccount = accountService.changeAccountStatus(userId, accountId, request);
+        // Each attempt is one transaction: an already closed account is refused there (409), against the same
+        // row the versioned save replaces
+        AccountDto updatedAccount = optimisticRetry.execute("changeAccountStatus",
+                () -> accountService.changeAccountStatus(userId, accountId, request));
         if (updatedAccount == null) {
             return ResponseEntity.notFound().build(); // Return 404 Not Found if the account does not exist
         }
         return ResponseEntity.ok(updatedAccount); // Return the updated account mapped to a DTO with a 200 OK status
     }
 
+    // Flag an account as hot by giving it sub-balances, or turn it back into an ordinary account with 0
+    @PatchMapping("/{userId}/{accountId}/balance-shards")
+    public ResponseEntity<?> updateBalanceShards(
+            @PathVariable Long userId,
+            @PathVariable Long accountId,
+            @RequestBody UpdateBalanceShardsRequest request
+    ) {
+        // check if account ID is found
+        if (!accountRepository.existsByIdAndUserId(accountId, userId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Account with ID " + accountId + " does not exist.");
+        }
+
+        // check if shard count is valid
+        if (request.getShards() == null || request.getShards() < 0 || request.getShards() > balanceShardConfig.getMaxShards()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body("Shard count must be between 0 and " + balanceShardConfig.getMaxShards());
+        }
+
+        BalanceDto balance = accountService.changeBalanceShards(userId, accountId, request);
+        return ResponseEntity.ok(balance); // Return the unchanged balance with a 200 OK status
+    }
+
     // Get all accounts for a user
     @GetMapping("/user/{userId}")//
     public ResponseEntity<?> getAllAccountsByUserId(@PathVariable Long userId) {
-        // Check if user ID is valid
-        if (!userRepository.existsById(userId)) {
+        List<AccountDto> accounts;
+        try {
+            // One projection query, the user is only checked when there are no accounts
+            accounts = accountService.getUserAccounts(userId);
+        } catch (EntityNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("User with ID " + userId + " does not exist.");
         }
-
-        // check if user doesn't have any accounts
-        if (!accountRepository.existsByUserId(userId)) {
-            return ResponseEntity.noContent().build(); // Return 204 No Content if the user has no accounts
-        }
-        var accounts = accountService.getUserAccounts(userId);
         if (accounts.isEmpty()) {
             return ResponseEntity.noContent().build(); // Return 204 No Content if no accounts found
         }
@@ -136,18 +159,20 @@ public class AccountController {
             @PathVariable Long userId,
             @PathVariable Long accountId
     ) {
+        // Read id, balance and status together instead of checking and loading the account separately
+        var account = accountRepository.findBalanceViewByIdAndUserId(accountId, userId).orElse(null);
         // Check if account ID is valid
-        if (!accountRepository.existsByIdAndUserId(accountId, userId)) {
+        if (account == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Account with ID " + accountId + " does not exist.");
         }
         // check if account is closed
-        if (accountRepository.findById(accountId).orElseThrow().getStatus() == AccountStatus.CLOSED) {
+        if (account.getStatus() == AccountStatus.CLOSED) {
             return ResponseEntity.status(HttpStatus.CONFLICT)
                     .body("Account with ID " + accountId + " is closed and cannot be accessed.");
         }
 
-        BalanceDto balance = accountService.getAccountBalance(accountId, userId);
+        BalanceDto balance = accountService.getAccountBalance(account);
         if (balance == null) {
             return ResponseEntity.notFound().build(); // Return 404 Not Found if the account does not exist
         }
@@ -184,5 +209,14 @@ public class AccountController {
         return ResponseEntity.ok(activeAccountsCount); // Return the count with a 200 OK status
     }
 
+    @ExceptionHandler(AccountStatusException.class)
+    public ResponseEntity<String> handleAccountStatus(AccountStatusException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailure() {
+        // The account kept changing underneath us and the retries ran out
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Account was updated concurrently, please try again");
+    }
 }
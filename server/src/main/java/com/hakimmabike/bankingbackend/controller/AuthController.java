@@ -4,28 +4,30 @@ import com.hakimmabike.bankingbackend.config.JwtConfig;
 import com.hakimmabike.bankingbackend.dto.auth.JwtResponse;
 import com.hakimmabike.bankingbackend.dto.auth.LoginUserRequest;
 import com.hakimmabike.bankingbackend.dto.auth.RegisterUserRequest;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
 import com.hakimmabike.bankingbackend.repository.UserRepository;
 import com.hakimmabike.bankingbackend.services.JwtService;
+import com.hakimmabike.bankingbackend.services.PasswordHashingExecutor;
 import com.hakimmabike.bankingbackend.services.UserService;
-import jakarta.servlet.http.Cookie;
-import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.util.concurrent.CompletableFuture;
+
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
 @AllArgsConstructor
 @RequestMapping("/api/auth")
 public class AuthController {
     private final UserRepository userRepository;
-    private final AuthenticationManager authenticationManager;
+    private final PasswordHashingExecutor passwordHashing;
     private final JwtService jwtService;
     private final JwtConfig jwtConfig;
     private final UserService userService;
@@ -55,43 +57,49 @@ public class AuthController {
 
     // Login endpoint
     @PostMapping("/login")
-    public ResponseEntity<?> login(
-            @Valid @RequestBody LoginUserRequest loginUserRequest,
-            HttpServletResponse response
+    public CompletableFuture<ResponseEntity<?>> login(
+            @Valid @RequestBody LoginUserRequest loginUserRequest
     ) {
-        // check if the user exists in the database
-        if (!userRepository.existsByEmail(loginUserRequest.getEmail())) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build(); // Return 404 Unauthorized if user does not exist
+        // Load the user once, it is both the existence check and the stored password hash
+        var user = userRepository.findByEmail(loginUserRequest.getEmail()).orElse(null);
+        if (user == null) {
+            // Return 404 Unauthorized if user does not exist
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
         }
 
-        // Authenticate the user using the provided email and password
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        loginUserRequest.getEmail(), // User's email
-                        loginUserRequest.getPassword() // User's password
-                )
-        );
-
-
-        // If authentication is successful, generate a JWT token
-        var user = userRepository.findByEmail(loginUserRequest.getEmail()).orElseThrow();
+        // Check the password on the hashing pool, the request thread is released while BCrypt runs
+        return passwordHashing.matches(loginUserRequest.getPassword(), user.getPassword()).thenApply(matches -> {
+            if (!matches) {
+                throw new BadCredentialsException("Bad credentials");
+            }
 
-        var accessToken = jwtService.generateAccessToken(user); // Generate access JWT token for the authenticated user
-        var refreshToken = jwtService.generateRefreshToken(user); // Generate refresh token for the authenticated user
+            var accessToken = jwtService.generateAccessToken(user); // Generate access JWT token for the authenticated user
+            var refreshToken = jwtService.generateRefreshToken(user); // Generate refresh token for the authenticated user
 
-        var cookie = new Cookie("refreshToken", refreshToken.toString());
-        cookie.setHttpOnly(true); // Set the cookie to be HTTP-only
-        cookie.setPath("/auth"); // Set the path for the cookie
-        cookie.setMaxAge(jwtConfig.getRefreshTokenExpiration()); // Set the cookie to expire in 7 days
-        cookie.setSecure(true);
-        response.addCookie(cookie);
+            var cookie = ResponseCookie.from("refreshToken", refreshToken.toString())
+                    .httpOnly(true) // Set the cookie to be HTTP-only
+                    .path("/auth") // Set the path for the cookie
+                    .maxAge(jwtConfig.getRefreshTokenExpiration()) // Set the cookie to expire in 7 days
+                    .secure(true)
+                    .build();
 
-        // If the user exists and the password matches, return a 200 OK status
-        return ResponseEntity.ok(new JwtResponse(user.getId(), user.getFirstName(), user.getEmail(),accessToken.toString()));
+            // If the user exists and the password matches, return a 200 OK status
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, cookie.toString())
+                    .body(new JwtResponse(user.getId(), user.getFirstName(), user.getEmail(), accessToken.toString()));
+        });
     }
 
     @ExceptionHandler(BadCredentialsException.class)
     public ResponseEntity<Void> handleBadCredentialsException() {
         return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
     }
+
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<String> handleServiceBusy(ServiceBusyException ex) {
+        // The hashing pool is saturated, ask the client to back off instead of tying up request threads
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
 }
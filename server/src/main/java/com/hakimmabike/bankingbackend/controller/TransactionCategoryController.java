@@ -1,5 +1,6 @@
 package com.hakimmabike.bankingbackend.controller;
 
+import com.hakimmabike.bankingbackend.cache.TransactionCategoryCache;
 import com.hakimmabike.bankingbackend.dto.transactionCategory.CreateTransactionCategoryRequest;
 import com.hakimmabike.bankingbackend.dto.transactionCategory.TransactionCategoryDto;
 import com.hakimmabike.bankingbackend.enums.CategoryType;
@@ -7,11 +8,10 @@ import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
 import com.hakimmabike.bankingbackend.services.TransactionService;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 // This controller is only used on Postman
 
 @RestController
@@ -20,11 +20,14 @@ import java.util.List;
 public class TransactionCategoryController {
     private final TransactionService transactionService;
     private final TransactionCategoryRepository categoryRepository;
+    private final TransactionCategoryCache categoryCache;
 
     @GetMapping
-    public ResponseEntity<List<TransactionCategoryDto>> getAllTransactionCategories() {
-        List<TransactionCategoryDto> categories = transactionService.getAllTransactionCategories();
-        return ResponseEntity.ok(categories);
+    public ResponseEntity<byte[]> getAllTransactionCategories() {
+        // Serialized once whenever the categories change, not on every request
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(categoryCache.findAllAsJson());
     }
 
     @GetMapping("/{name}")
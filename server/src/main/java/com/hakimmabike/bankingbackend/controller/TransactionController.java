@@ -1,33 +1,76 @@
 package com.hakimmabike.bankingbackend.controller;
 
+import com.hakimmabike.bankingbackend.config.TransactionHistoryConfig;
 import com.hakimmabike.bankingbackend.dto.transaction.*;
-import com.hakimmabike.bankingbackend.services.AccountService;
+import com.hakimmabike.bankingbackend.enums.TransactionType;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import com.hakimmabike.bankingbackend.services.AccountLaneExecutor;
+import com.hakimmabike.bankingbackend.services.BatchTransferService;
+import com.hakimmabike.bankingbackend.services.IdempotencyService;
+import com.hakimmabike.bankingbackend.services.TransactionExportService;
+import com.hakimmabike.bankingbackend.services.TransactionHistoryService;
 import com.hakimmabike.bankingbackend.services.TransactionService;
+import com.hakimmabike.bankingbackend.services.ValidationContext;
+import com.hakimmabike.bankingbackend.services.ValidationContextLoader;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.AllArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
 @AllArgsConstructor
 @RequestMapping("/api/transactions")
 public class TransactionController {
+    private static final int MAX_BATCH_TRANSFERS = 5000;
+
     private final TransactionService transactionService;
-    private final AccountService accountService;
+    private final AccountLaneExecutor accountLaneExecutor;
+    private final BatchTransferService batchTransferService;
+    private final IdempotencyService idempotencyService;
+    private final ValidationContextLoader validationContextLoader;
+    private final TransactionHistoryService transactionHistoryService;
+    private final TransactionHistoryConfig historyConfig;
+    private final TransactionExportService transactionExportService;
 
     // Deposit money into an account
     @PostMapping("/{userId}/deposit")//
     public ResponseEntity<?> deposit(
             @PathVariable Long userId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @RequestBody DepositRequest request
     ) {
+        // A retry with the same Idempotency-Key gets the first response back instead of a second deposit
+        return idempotencyService.execute(idempotencyKey, userId, "deposit", request,
+                accountLaneExecutor.depositsOnCallingThread(), () -> makeDeposit(userId, request));
+    }
+
+    private ResponseEntity<?> makeDeposit(Long userId, DepositRequest request) {
+        // Look up the account and category once, every check below runs against them. A deposit
+        // doesn't check the balance, so this is answered from memory.
+        ValidationContext context = validationContextLoader.loadWithoutBalances(
+                Collections.singletonList(request.getAccountNumber()), request.getCategoryName());
+
         // check if account number exists
-        if (!transactionService.accountExists(request.getAccountNumber())) {
+        if (!context.accountExists(request.getAccountNumber())) {
             return ResponseEntity.badRequest().body("Accout doesn't exist"); // Return 400 Bad Request if account number does not exist
         }
 
@@ -51,32 +94,46 @@ public class TransactionController {
         }
 
         // check if category exists
-        if (!transactionService.categoryExists(request.getCategoryName())) {
+        if (!context.categoryExists()) {
             return ResponseEntity.badRequest().body("Category doesn't exist"); // Return 400 Bad Request if category does not exist
         }
 
         // check if account is closed
-        if (transactionService.isAccountClosed(request.getAccountNumber())) {
+        if (context.isAccountClosed(request.getAccountNumber())) {
             // return 409 Conflict if the account is closed
             return ResponseEntity.status(HttpStatusCode.valueOf(409)).body("Account is closed, can't make a deposit");
         }
         // make a deposit transaction
-        TransactionDto transactionDto = transactionService.deposit(userId,request);
+        TransactionDto transactionDto = accountLaneExecutor.deposit(userId, request, context);
         // Return the transaction details with a 201 Created status
         return ResponseEntity.status(201).body(transactionDto);
     }
 
     // Withdraw money from an account
     @PostMapping("/{userId}/withdraw")//
-    public ResponseEntity<?> withdraw(@RequestBody WithdrawRequest request) {
+    public ResponseEntity<?> withdraw(
+            @PathVariable Long userId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody WithdrawRequest request
+    ) {
+        // A retry with the same Idempotency-Key gets the first response back instead of a second withdrawal
+        return idempotencyService.execute(idempotencyKey, userId, "withdraw", request,
+                accountLaneExecutor.withdrawalsAndTransfersOnCallingThread(), () -> makeWithdrawal(request));
+    }
+
+    private ResponseEntity<?> makeWithdrawal(WithdrawRequest request) {
+        // Load the account and category once, every check below runs against them
+        ValidationContext context = validationContextLoader.load(
+                Collections.singletonList(request.getAccountNumber()), request.getCategoryName());
+
         // Check if account number exists
-        if (!accountService.accountExists(request.getAccountNumber())) {
+        if (!context.accountExists(request.getAccountNumber())) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Account not found with account number: " + request.getAccountNumber());
         }
 
         // check if amount is less than account balance
-        BigDecimal accountBalance = accountService.getAccountBalanceByAccountNumber(request.getAccountNumber());
+        BigDecimal accountBalance = context.balance(request.getAccountNumber());
         if (accountBalance == null || request.getAmount().compareTo(accountBalance) > 0) {
             return ResponseEntity.badRequest().body("Insufficient funds for withdrawal"); // Return 400 Bad Request if insufficient funds
         }
@@ -87,7 +144,7 @@ public class TransactionController {
         }
 
         // check if account is closed
-        if (transactionService.isAccountClosed(request.getAccountNumber())) {
+        if (context.isAccountClosed(request.getAccountNumber())) {
             // return 409 Conflict if the account is closed
             return ResponseEntity.status(HttpStatusCode.valueOf(409)).body("Account is closed, can't make a withdrawal");
         }
@@ -107,28 +164,95 @@ public class TransactionController {
         }
 
         // check if category exists
-        if (!transactionService.categoryExists(request.getCategoryName())) {
+        if (!context.categoryExists()) {
             return ResponseEntity.badRequest().body("Category doesn't exist"); // Return 400 Bad Request if category does not exist
         }
         // make a withdrawal transaction
-        TransactionDto transactionDto = transactionService.withdraw(request);
+        TransactionDto transactionDto = accountLaneExecutor.withdraw(request, context);
         // Return the transaction details with a 201 Created status
         return ResponseEntity.status(201).body(transactionDto);
     }
 
     // Transfer money between accounts
     @PostMapping("/{userId}/transfer")//
-    public ResponseEntity<?> transfer(@RequestBody TransferRequest request) {
+    public ResponseEntity<?> transfer(
+            @PathVariable Long userId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody TransferRequest request
+    ) {
+        // A retry with the same Idempotency-Key gets the first response back instead of a second transfer
+        return idempotencyService.execute(idempotencyKey, userId, "transfer", request,
+                accountLaneExecutor.withdrawalsAndTransfersOnCallingThread(), () -> makeTransfer(request));
+    }
+
+    private ResponseEntity<?> makeTransfer(TransferRequest request) {
+        ResponseEntity<?> invalid = validateTransfer(request);
+        if (invalid != null) {
+            return invalid;
+        }
+        // make a transfer transaction
+        TransferDto transfer = accountLaneExecutor.transfer(request);
+        // Return the transaction details with a 201 Created status
+        return ResponseEntity.status(201).body(transfer);
+    }
+
+    // Accept a transfer and apply it in the background, e.g. for bursts of payouts
+    @PostMapping("/{userId}/transfer/async")
+    public ResponseEntity<?> transferAsync(
+            @PathVariable Long userId,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody TransferRequest request,
+            UriComponentsBuilder uriBuilder
+    ) {
+        // Recording the pending transfer always runs on this thread
+        return idempotencyService.execute(idempotencyKey, userId, "transfer-async", request, true, () -> {
+            ResponseEntity<?> invalid = validateTransfer(request);
+            if (invalid != null) {
+                return invalid;
+            }
+            // Record the transfer as PENDING, a worker moves the money
+            TransferStatusDto transfer = transactionService.submitTransfer(request);
+
+            // Build the URI where the client can poll the transfer's status
+            var uri = uriBuilder.path("/api/transactions/{userId}/transfer/{transferId}")
+                    .buildAndExpand(userId, transfer.getId())
+                    .toUri();
+
+            // Return a 202 Accepted response with the location of the status resource
+            return ResponseEntity.accepted().location(uri).body(transfer);
+        });
+    }
+
+    // Get the status of a transfer, PENDING until a worker has applied it
+    @GetMapping("/{userId}/transfer/{transferId}")
+    public ResponseEntity<?> getTransferStatus(
+            @PathVariable Long userId,
+            @PathVariable Long transferId
+    ) {
+        try {
+            return ResponseEntity.ok(transactionService.getTransferStatus(userId, transferId));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body("Transfer with ID " + transferId + " does not exist.");
+        }
+    }
+
+    // Checks shared by the synchronous and asynchronous transfer endpoints, returns null when the transfer can go ahead
+    private ResponseEntity<?> validateTransfer(TransferRequest request) {
+        // Load both accounts once, every check below runs against them
+        ValidationContext context = validationContextLoader.load(
+                Arrays.asList(request.getFromAccount(), request.getToAccount()), null);
+
         // Check if source account number exists
-        if (!transactionService.accountExists(request.getFromAccount())) {
+        if (!context.accountExists(request.getFromAccount())) {
             return ResponseEntity.badRequest().body("Source account doesn't exist"); // Return 400 Bad Request if source account number does not exist
         }
         // Check if destination account number exists
-        if (!transactionService.accountExists(request.getToAccount())) {
+        if (!context.accountExists(request.getToAccount())) {
             return ResponseEntity.badRequest().body("Destination account doesn't exist"); // Return 400 Bad Request if destination account number does not exist
         }
         // Check if amount is more than from account balance
-        BigDecimal fromAccountBalance = accountService.getAccountBalanceByAccountNumber(request.getFromAccount());
+        BigDecimal fromAccountBalance = context.balance(request.getFromAccount());
         if (fromAccountBalance == null || request.getAmount().compareTo(fromAccountBalance) > 0) {
             return ResponseEntity.badRequest().body("Insufficient funds for transfer"); // Return 400 Bad Request if insufficient funds
         }
@@ -150,11 +274,11 @@ public class TransactionController {
             return ResponseEntity.badRequest().body("Amount can't be empty"); // Return 400 Bad Request if amount is empty
         }
         // check if accounts are closed
-        if (transactionService.isAccountClosed(request.getFromAccount())) {
+        if (context.isAccountClosed(request.getFromAccount())) {
             // return 409 Conflict if the source account is closed
             return ResponseEntity.status(HttpStatusCode.valueOf(409)).body("Source account is closed, can't make a transfer");
         }
-        if (transactionService.isAccountClosed(request.getToAccount())) {
+        if (context.isAccountClosed(request.getToAccount())) {
             // return 409 Conflict if the destination account is closed
             return ResponseEntity.status(HttpStatusCode.valueOf(409)).body("Destination account is closed, can't receive a transfer");
         }
@@ -162,18 +286,108 @@ public class TransactionController {
         if (request.getFromAccount().equals(request.getToAccount())) {
             return ResponseEntity.badRequest().body("Source and destination accounts cannot be the same"); // Return 400 Bad Request if accounts are the same
         }
-        // make a transfer transaction
-        TransferDto transfer = transactionService.transfer(request);
-        // Return the transaction details with a 201 Created status
-        return ResponseEntity.status(201).body(transfer);
+        return null;
+    }
+
+    // Apply many transfers in one request, e.g. payroll or payout runs
+    @PostMapping("/{userId}/transfer/batch")
+    public ResponseEntity<?> transferBatch(@RequestBody BatchTransferRequest request) {
+        // check if the batch is empty or too large
+        if (request.getTransfers() == null || request.getTransfers().isEmpty()) {
+            return ResponseEntity.badRequest().body("Transfers can't be empty"); // Return 400 Bad Request if there is nothing to transfer
+        }
+        if (request.getTransfers().size() > MAX_BATCH_TRANSFERS) {
+            return ResponseEntity.badRequest().body("A batch can't contain more than " + MAX_BATCH_TRANSFERS + " transfers");
+        }
+        // Each transfer is validated on its own, failed ones are reported in the results
+        List<BatchTransferResultDto> results = batchTransferService.transfer(request.getTransfers());
+        // Return the per-transfer results with a 200 OK status
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/{userId}/history")
+    public ResponseEntity<?> getTransactionHistory(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            @RequestParam(required = false) String accountNumber,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to
+    ) {
+        int pageSize = size != null ? size : historyConfig.getDefaultPageSize();
+        if (pageSize < 1 || pageSize > historyConfig.getMaxPageSize()) {
+            return ResponseEntity.badRequest().body("Size must be between 1 and " + historyConfig.getMaxPageSize());
+        }
+        TransactionType transactionType = null;
+        if (type != null) {
+            try {
+                transactionType = TransactionType.valueOf(type.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body("Unknown transaction type"); // Return 400 Bad Request if the type is not one we know
+            }
+        }
+        if (from != null && to != null && from.isAfter(to)) {
+            return ResponseEntity.badRequest().body("From date can't be after to date");
+        }
+        TransactionHistoryService.Cursor position = null;
+        if (cursor != null) {
+            try {
+                position = TransactionHistoryService.Cursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body("Invalid cursor"); // Return 400 Bad Request if the cursor was not one we handed out
+            }
+        }
+
+        // Fetch the page that starts right after the cursor
+        TransactionPageDto page = transactionHistoryService.getPage(userId, position, pageSize, accountNumber,
+                transactionType, category, from, to);
+        return ResponseEntity.ok(page);
+    }
+
+    @GetMapping("/{userId}/export")
+    public ResponseEntity<?> exportTransactions(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String accountNumber,
+            NativeWebRequest request
+    ) {
+        TransactionExportService.Format exportFormat;
+        try {
+            exportFormat = TransactionExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Format must be csv or ndjson"); // Return 400 Bad Request for an unknown format
+        }
+
+        // Take an export slot now, a busy server answers 503 before any rows are sent
+        TransactionExportService.Slot slot = transactionExportService.acquireSlot();
+        // The body may never run (task rejected, async timeout, client gone), the slot is given back either way
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(slot, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                slot.release();
+            }
+        });
+        StreamingResponseBody body = out -> transactionExportService.export(slot, userId, accountNumber, exportFormat, out);
+
+        // Rows are written as they are read, the history is never held in memory
+        boolean csv = exportFormat == TransactionExportService.Format.CSV;
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv") : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"transactions-" + userId + (csv ? ".csv" : ".ndjson") + "\"")
+                .body(body);
     }
 
     @GetMapping("/{userId}/account")
     public ResponseEntity<?> getAllTransactionsByUserId(
-            @PathVariable Long userId
+            @PathVariable Long userId,
+            @RequestParam(required = false) Integer limit
     ) {
-        // Fetch all transactions for the specified user ID
-        List<TransactionDto> transactions = transactionService.getAllTransactions(userId);
+        // Only the most recent transactions, the full history is paged through /history
+        int max = limit != null ? Math.min(Math.max(limit, 1), historyConfig.getMaxPageSize()) : historyConfig.getListLimit();
+        List<TransactionDto> transactions = transactionHistoryService.getRecent(userId, max);
 
         // If no transactions are found, return a 200 OK status with a message
         if (transactions.isEmpty()) {
@@ -187,15 +401,13 @@ public class TransactionController {
     public ResponseEntity<?> getTransactionsCount(
             @PathVariable Long userId
     ) {
-        // Fetch all transactions for the specified user ID
-        List<TransactionDto> transactions = transactionService.getAllTransactions(userId);
-
-        int transactionsCount = transactions.size();
+        // Read the user's counter row instead of loading the history to count it
+        long transactionsCount = transactionService.getTransactionCount(userId);
 
-        TotalTransactionsDto totalTransactionsDto = new TotalTransactionsDto(transactionsCount);
+        TotalTransactionsDto totalTransactionsDto = new TotalTransactionsDto(Math.toIntExact(transactionsCount));
 
         // If no transactions are found, return a 200 OK status with zero
-        if (transactions.isEmpty()) {
+        if (transactionsCount == 0) {
             return ResponseEntity.ok(BigDecimal.ZERO); // Return 200 OK with zero if no transactions are found
         }
 
@@ -203,8 +415,17 @@ public class TransactionController {
         return ResponseEntity.ok(totalTransactionsDto);
     }
 
+    @ExceptionHandler(AccountStatusException.class)
+    public ResponseEntity<String> handleAccountStatus(AccountStatusException ex) {
+        // The account was closed after the request was validated against the cached account
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
 
-
-
-
+    @ExceptionHandler(ServiceBusyException.class)
+    public ResponseEntity<String> handleServiceBusy(ServiceBusyException ex) {
+        // The write queue is full, ask the client to back off instead of queueing without limit
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
+    }
 }
@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.dto.account;
+
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+
+// Read-only projection of an account's id, balance and status, used after a guarded balance update and for balance reads.
+// getBalance() is the whole balance: the account row plus any balance shards, read in one statement.
+public interface AccountBalanceView {
+    Long getId();
+
+    String getAccountNumber();
+
+    Money getBalance();
+
+    AccountStatus getStatus();
+}
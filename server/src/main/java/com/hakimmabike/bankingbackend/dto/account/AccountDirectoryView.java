@@ -0,0 +1,17 @@
+package com.hakimmabike.bankingbackend.dto.account;
+
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+
+// Read-only projection of what identifies an account, without its balance
+public interface AccountDirectoryView {
+    Long getId();
+
+    String getAccountNumber();
+
+    Long getUserId();
+
+    AccountStatus getStatus();
+
+    AccountType getAccountType();
+}
@@ -0,0 +1,19 @@
+package com.hakimmabike.bankingbackend.dto.account;
+
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+
+// Read-only projection of the columns behind AccountDto, filled straight from the query without creating
+// managed Account entities. getBalance() includes the balance shards, see AccountBalanceView.
+public interface AccountSummaryView {
+    Long getId();
+
+    String getAccountNumber();
+
+    AccountType getAccountType();
+
+    Money getBalance();
+
+    AccountStatus getStatus();
+}
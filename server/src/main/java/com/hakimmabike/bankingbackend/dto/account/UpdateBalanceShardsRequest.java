@@ -0,0 +1,8 @@
+package com.hakimmabike.bankingbackend.dto.account;
+
+import lombok.Data;
+
+@Data
+public class UpdateBalanceShardsRequest {
+    private Integer shards;
+}
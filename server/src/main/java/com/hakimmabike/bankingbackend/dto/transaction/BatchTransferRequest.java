@@ -0,0 +1,10 @@
+package com.hakimmabike.bankingbackend.dto.transaction;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchTransferRequest {
+    private List<TransferRequest> transfers;
+}
@@ -0,0 +1,13 @@
+package com.hakimmabike.bankingbackend.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class BatchTransferResultDto {
+    private int index; // position of the transfer in the request
+    private String status; // COMPLETED or FAILED
+    private Long transferId; // null when the transfer failed
+    private String message;
+}
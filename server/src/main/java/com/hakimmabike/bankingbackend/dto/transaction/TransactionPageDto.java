@@ -0,0 +1,13 @@
+package com.hakimmabike.bankingbackend.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+public class TransactionPageDto {
+    private List<TransactionDto> transactions;
+    private String nextCursor; // pass back as cursor to get the next page, null on the last page
+}
@@ -0,0 +1,15 @@
+package com.hakimmabike.bankingbackend.dto.transaction;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+@AllArgsConstructor
+@Getter
+public class TransferStatusDto {
+    private Long id;
+    private BigDecimal amount;
+    private String status;
+    private String failureReason;
+}
@@ -0,0 +1,8 @@
+package com.hakimmabike.bankingbackend.dto.transaction;
+
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.enums.TransactionStatus;
+
+// Read-only constructor projection of the columns behind TransferStatusDto
+public record TransferStatusView(Long id, Money amount, TransactionStatus status, String failureReason) {
+}
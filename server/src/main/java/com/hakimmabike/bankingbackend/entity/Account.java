@@ -7,7 +7,6 @@ import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -21,7 +20,8 @@ import java.util.List;
 @Table(name = "accounts") // Specify the table name if needed
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "accounts_seq")
+    @SequenceGenerator(name = "accounts_seq", sequenceName = "accounts_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, name = "account_number")
@@ -32,12 +32,22 @@ public class Account {
     private AccountType accountType;
 
     @Column(nullable = false, name = "balance")
-    private BigDecimal balance;
+    private Money balance;
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private AccountStatus status;
 
+    // Number of sub-balance rows in account_balance_shards, 0 for ordinary accounts. Only changed through
+    // BalanceShardService, so JPA never writes it.
+    @Column(name = "balance_shards", nullable = false, insertable = false, updatable = false)
+    private int balanceShards;
+
+    // Bumped on every balance or status change so concurrent writers can't overwrite each other
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     @CreationTimestamp
     private LocalDateTime createdAt;
@@ -53,16 +63,19 @@ public class Account {
     private User user;
 
     // one-to-many relationship with Transaction
+    @Builder.Default
     @OneToMany(mappedBy = "account", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @ToString.Exclude
     private List<Transaction> transactions = new ArrayList<>();
 
     // one-to-many relationship with Transfer (sender)
+    @Builder.Default
     @OneToMany(mappedBy = "senderAccount", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @ToString.Exclude
     private List<Transfer> sentTransfers = new ArrayList<>();
 
     // one-to-many relationship with Transfer (receiver)
+    @Builder.Default
     @OneToMany(mappedBy = "receiverAccount", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @ToString.Exclude
     private List<Transfer> receivedTransfers = new ArrayList<>();
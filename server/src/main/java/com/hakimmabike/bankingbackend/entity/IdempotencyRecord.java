@@ -0,0 +1,48 @@
+package com.hakimmabike.bankingbackend.entity;
+
+import com.hakimmabike.bankingbackend.enums.IdempotencyStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "idempotency_keys")
+public class IdempotencyRecord {
+    // Scoped key: userId, operation and the client's Idempotency-Key header
+    @Id
+    @Column(name = "idempotency_key")
+    private String key;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private IdempotencyStatus status;
+
+    // SHA-256 of the request body the key was first used with, hex encoded
+    @Column(name = "request_hash")
+    private String requestHash;
+
+    // Lease of an IN_PROGRESS claim, a retry may take the key over once it has run out
+    @Column(name = "claimed_until")
+    private LocalDateTime claimedUntil;
+
+    @Column(name = "response_status")
+    private Integer responseStatus;
+
+    @Column(name = "response_content_type")
+    private String responseContentType;
+
+    @Column(name = "response_body")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,80 @@
+package com.hakimmabike.bankingbackend.entity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of money as a whole number of minor units (pence), the same two decimal places as the NUMERIC(15, 2)
+ * columns it is stored in. Adding and comparing amounts is plain long arithmetic, BigDecimal is only used where
+ * amounts enter or leave the application (requests, DTOs, JDBC).
+ *
+ * Money is immutable, so plus and minus allocate a new instance for every non-zero result. That is one small
+ * object per operation instead of BigDecimal's larger ones, not zero: see the benchmark in MoneyTests.
+ *
+ * Arithmetic throws ArithmeticException on overflow instead of wrapping around.
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    // Rounded half away from zero to two places, like the database does when it stores a NUMERIC(15, 2)
+    public static Money of(BigDecimal amount) {
+        return ofMinor(amount.setScale(SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    // Null stays null, for nullable columns and optional request fields
+    public static Money ofNullable(BigDecimal amount) {
+        return amount == null ? null : of(amount);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minorUnits));
+    }
+
+    public int signum() {
+        return Long.signum(minorUnits);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public boolean isGreaterThan(Money other) {
+        return minorUnits > other.minorUnits;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    // Plain decimal, e.g. 12.50
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -7,7 +7,6 @@ import jakarta.validation.constraints.NotNull;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
@@ -17,9 +16,15 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "transactions") // Uncomment if you want to specify a table name||
+// Category and transfer link of a transaction, fetched with it when transactions are listed
+@NamedEntityGraph(name = "Transaction.details", attributeNodes = {
+        @NamedAttributeNode("transactionCategory"),
+        @NamedAttributeNode("transfer")
+})
 public class Transaction {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+    @SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, name = "transaction_number")
@@ -29,20 +34,23 @@ public class Transaction {
     private String transactionType;
 
     @Column(nullable = false, name = "amount")
-    private BigDecimal amount;
+    private Money amount;
 
     @Column(nullable = false, name = "balance_after")
-    private Double balanceAfterTransaction;
+    private Money balanceAfterTransaction;
 
     @Column(nullable = false, name = "description")
     private String description;
 
+    @Builder.Default
     @Column(nullable = false, name = "code")
     private String code = "NULL";
 
+    @Builder.Default
     @Column(nullable = false, name = "sender")
     private Boolean sender = false;
 
+    @Builder.Default
     @Column(nullable = false , name = "reciever")
     private Boolean receiver = false;
 
@@ -39,6 +39,7 @@ public class TransactionCategory {
     private LocalDateTime createdAt;
 
     // One-to-Many relationship with Transaction
+    @Builder.Default
     @OneToMany(mappedBy = "transactionCategory", fetch = FetchType.LAZY)
     private List<Transaction> transactions = new ArrayList<>();
 
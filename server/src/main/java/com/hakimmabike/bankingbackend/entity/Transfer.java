@@ -5,7 +5,6 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -17,13 +16,19 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Table(name = "transfers") // Uncomment if you want to specify a table name
+// Both parties of a transfer, fetched with it when transfers are listed
+@NamedEntityGraph(name = "Transfer.parties", attributeNodes = {
+        @NamedAttributeNode("senderAccount"),
+        @NamedAttributeNode("receiverAccount")
+})
 public class Transfer {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transfers_seq")
+    @SequenceGenerator(name = "transfers_seq", sequenceName = "transfers_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, name = "amount")
-    private BigDecimal amount;
+    private Money amount;
 
     @Column(nullable = false, name = "description")
     private String description;
@@ -32,6 +37,10 @@ public class Transfer {
     @Column(nullable = false)
     private TransactionStatus status;
 
+    // Why an asynchronous transfer ended up FAILED
+    @Column(name = "failure_reason")
+    private String failureReason;
+
     @Column(name = "transfer_date", nullable = false)
     private LocalDateTime transferDate;
 
@@ -50,6 +59,7 @@ public class Transfer {
     private Account receiverAccount; // Many-to-One relationship with Account (receiver)
 
     // One-to-Many relationship with Transaction
+    @Builder.Default
     @OneToMany(mappedBy = "transfer", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     private List<Transaction> transactions = new ArrayList<>();
 }
@@ -0,0 +1,16 @@
+package com.hakimmabike.bankingbackend.enums;
+
+public enum IdempotencyStatus {
+    IN_PROGRESS("in_progress"),
+    COMPLETED("completed");
+
+    private final String value;
+
+    IdempotencyStatus(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
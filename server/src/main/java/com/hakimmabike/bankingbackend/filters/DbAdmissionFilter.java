@@ -0,0 +1,84 @@
+package com.hakimmabike.bankingbackend.filters;
+
+import com.hakimmabike.bankingbackend.config.DbAdmissionConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets at most as many API requests run as the database pool has connections. The rest wait on a fair
+ * semaphore, which is cheap for both platform and virtual threads, instead of queueing inside Hikari where
+ * every waiter counts towards its connection-timeout. A request that can't get a permit within max-wait is
+ * answered with 503 and Retry-After.
+ *
+ * Metrics:
+ *  - banking.db.admission.waiting   requests waiting for a permit
+ *  - banking.db.admission.rejected  requests answered 503 after max-wait
+ */
+@Component
+public class DbAdmissionFilter extends OncePerRequestFilter {
+    private final DbAdmissionConfig config;
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    public DbAdmissionFilter(DbAdmissionConfig config, DataSource dataSource, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.permits = new Semaphore(config.getPermits() > 0 ? config.getPermits() : poolSize(dataSource), true);
+        this.rejected = Counter.builder("banking.db.admission.rejected").register(meterRegistry);
+        Gauge.builder("banking.db.admission.waiting", permits, Semaphore::getQueueLength).register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // Only API calls reach the database, health checks and docs are never held back
+        return !config.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        boolean admitted;
+        try {
+            admitted = permits.tryAcquire(config.getMaxWait().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
+        if (!admitted) {
+            rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static int poolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            // fall through to Hikari's default pool size
+        }
+        return 10;
+    }
+}
@@ -41,7 +41,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         // Extract the token by removing the "Bearer " prefix
-        var token = authHeader.replace("Bearer ", "");
+        var token = authHeader.substring("Bearer ".length());
         var jwt = jwtService.parseToken(token);
         // check if token is invalid
         if (jwt == null || jwt.isExpired()) {
@@ -3,11 +3,21 @@ package com.hakimmabike.bankingbackend.mappers;
 import com.hakimmabike.bankingbackend.dto.account.AccountDto;
 import com.hakimmabike.bankingbackend.entity.Account;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", uses = MoneyMapper.class)
 public interface AccountMapper {
     AccountDto toDto(Account account);
 
+    // Shards, version, timestamps and relations are never taken from a DTO
+    @Mapping(target = "balanceShards", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "user", ignore = true)
+    @Mapping(target = "transactions", ignore = true)
+    @Mapping(target = "sentTransfers", ignore = true)
+    @Mapping(target = "receivedTransfers", ignore = true)
     Account toEntity(AccountDto accountDto);
 
 }
@@ -0,0 +1,18 @@
+package com.hakimmabike.bankingbackend.mappers;
+
+import com.hakimmabike.bankingbackend.entity.Money;
+import org.mapstruct.Mapper;
+
+import java.math.BigDecimal;
+
+// Entities hold Money, DTOs keep exposing plain decimals
+@Mapper(componentModel = "spring")
+public interface MoneyMapper {
+    default BigDecimal toBigDecimal(Money money) {
+        return money == null ? null : money.toBigDecimal();
+    }
+
+    default Money toMoney(BigDecimal amount) {
+        return Money.ofNullable(amount);
+    }
+}
@@ -7,11 +7,18 @@ import com.hakimmabike.bankingbackend.entity.TransactionCategory;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", uses = MoneyMapper.class)
 public interface TransactionMapper {
     @Mapping(target = "categoryName", expression = "java(transaction.getTransactionCategory() != null ? transaction.getTransactionCategory().getName() : null)")
     TransactionDto toDto(Transaction transaction);
 
+    // Status, dates and relations are set by the service, never taken from a DTO
+    @Mapping(target = "status", ignore = true)
+    @Mapping(target = "transactionDate", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "account", ignore = true)
+    @Mapping(target = "transactionCategory", ignore = true)
+    @Mapping(target = "transfer", ignore = true)
     Transaction toEntity(TransactionDto transactionDto);
 
     TransactionCategoryDto toCategoryDto(TransactionCategory transactionCategory);
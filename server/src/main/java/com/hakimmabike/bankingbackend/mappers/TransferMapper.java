@@ -3,15 +3,31 @@ package com.hakimmabike.bankingbackend.mappers;
 import com.hakimmabike.bankingbackend.dto.transaction.TransferDto;
 import com.hakimmabike.bankingbackend.entity.Transfer;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 
-@Mapper(componentModel = "spring")
+@Mapper(componentModel = "spring", uses = MoneyMapper.class)
 public interface TransferMapper {
     // Maps a Transfer entity to a TransferDto, including sender and receiver account numbers
     TransferDto toDto(Transfer transfer, String senderAccountNumber, String receiverAccountNumber);
 
+    // Status, dates and accounts are set by the service, never taken from a DTO
+    @Mapping(target = "status", ignore = true)
+    @Mapping(target = "failureReason", ignore = true)
+    @Mapping(target = "transferDate", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "senderAccount", ignore = true)
+    @Mapping(target = "receiverAccount", ignore = true)
+    @Mapping(target = "transactions", ignore = true)
     Transfer toEntity(TransferDto transferDto);
 
     // Updates an existing Transfer entity with data from the TransferDto
+    @Mapping(target = "status", ignore = true)
+    @Mapping(target = "failureReason", ignore = true)
+    @Mapping(target = "transferDate", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "senderAccount", ignore = true)
+    @Mapping(target = "receiverAccount", ignore = true)
+    @Mapping(target = "transactions", ignore = true)
     void update(TransferDto transferDto, @MappingTarget Transfer transfer);
 }
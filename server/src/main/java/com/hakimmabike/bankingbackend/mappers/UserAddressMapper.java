@@ -4,14 +4,22 @@ import com.hakimmabike.bankingbackend.dto.user.CustomiseAddressRequest;
 import com.hakimmabike.bankingbackend.dto.user.UserAddressDto;
 import com.hakimmabike.bankingbackend.entity.UserAddress;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
 public interface UserAddressMapper {
+    @Mapping(target = "userId", ignore = true)
     UserAddressDto toDto(UserAddress userAddress);
 
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "user", ignore = true)
     UserAddress toEntity(CustomiseAddressRequest request);
 
     // Additional methods can be added here if needed
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "user", ignore = true)
     UserAddress update(CustomiseAddressRequest request, @MappingTarget UserAddress userAddress);
 }
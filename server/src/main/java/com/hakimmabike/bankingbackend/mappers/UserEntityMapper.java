@@ -5,14 +5,29 @@ import com.hakimmabike.bankingbackend.dto.user.UpdateUserRequest;
 import com.hakimmabike.bankingbackend.dto.user.UserDto;
 import com.hakimmabike.bankingbackend.entity.User;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 
 @Mapper(componentModel = "spring")
 public interface UserEntityMapper {
     UserDto toDto(User userEntity);
 
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "status", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "userAddress", ignore = true)
+    @Mapping(target = "accounts", ignore = true)
     User toEntity(RegisterUserRequest request);
 
     // Additional methods can be added here if needed
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "password", ignore = true)
+    @Mapping(target = "status", ignore = true)
+    @Mapping(target = "createdAt", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "role", ignore = true)
+    @Mapping(target = "userAddress", ignore = true)
+    @Mapping(target = "accounts", ignore = true)
     User update(UpdateUserRequest request, @MappingTarget User userEntity);
 }
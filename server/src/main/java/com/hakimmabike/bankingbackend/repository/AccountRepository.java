@@ -1,15 +1,20 @@
 package com.hakimmabike.bankingbackend.repository;
 
+import com.hakimmabike.bankingbackend.dto.account.AccountBalanceView;
+import com.hakimmabike.bankingbackend.dto.account.AccountDirectoryView;
+import com.hakimmabike.bankingbackend.dto.account.AccountSummaryView;
 import com.hakimmabike.bankingbackend.entity.Account;
 import com.hakimmabike.bankingbackend.entity.User;
 import com.hakimmabike.bankingbackend.enums.AccountStatus;
 import com.hakimmabike.bankingbackend.enums.AccountType;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -49,8 +54,68 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
 
     int countByUserId(Long userId);
 
-    @Query("SELECT COUNT(a) FROM Account a WHERE a.user.id = :userId AND a.status = 'ACTIVE'")
-    int countActiveAccounts(Long userId);
+    // Count the user's accounts in the given status without loading them
+    @Query("SELECT COUNT(a) FROM Account a WHERE a.user.id = :userId AND a.status = :status")
+    long countByUserIdAndStatus(@Param("userId") Long userId, @Param("status") AccountStatus status);
+
+    // Sum of the user's balances including money held in balance shards, 0 if the user has no accounts
+    @Query(value = "SELECT COALESCE(SUM(a.balance), 0) + COALESCE((SELECT SUM(s.balance) FROM account_balance_shards s " +
+            "JOIN accounts sa ON sa.id = s.account_id WHERE sa.user_id = :userId), 0) " +
+            "FROM accounts a WHERE a.user_id = :userId", nativeQuery = true)
+    BigDecimal sumBalanceByUserId(@Param("userId") Long userId);
 
     boolean existsByIdAndUserId(Long accountId, Long userId);
+
+    // Read what identifies an account, for the account directory cache
+    @Query("SELECT a.id AS id, a.accountNumber AS accountNumber, a.user.id AS userId, a.status AS status, " +
+            "a.accountType AS accountType FROM Account a WHERE a.accountNumber = :accountNumber")
+    Optional<AccountDirectoryView> findDirectoryViewByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    // The balance of an account row plus its shards, summed in the same statement so the two can't disagree
+    String TOTAL_BALANCE = "a.balance + COALESCE((SELECT SUM(s.balance) FROM account_balance_shards s WHERE s.account_id = a.id), 0)";
+    String BALANCE_VIEW_SELECT = "SELECT a.id AS id, a.account_number AS \"accountNumber\", " + TOTAL_BALANCE + " AS balance, " +
+            "a.status AS status FROM accounts a ";
+
+    // Read the id and current balance of an account without loading the entity
+    @Query(value = BALANCE_VIEW_SELECT + "WHERE a.account_number = :accountNumber", nativeQuery = true)
+    Optional<AccountBalanceView> findBalanceViewByAccountNumber(@Param("accountNumber") String accountNumber);
+
+    // Same as above for several accounts at once
+    @Query(value = BALANCE_VIEW_SELECT + "WHERE a.account_number IN (:accountNumbers)", nativeQuery = true)
+    List<AccountBalanceView> findBalanceViewsByAccountNumberIn(@Param("accountNumbers") List<String> accountNumbers);
+
+    // Same projection for one of the user's accounts, looked up by id
+    @Query(value = BALANCE_VIEW_SELECT + "WHERE a.id = :accountId AND a.user_id = :userId", nativeQuery = true)
+    Optional<AccountBalanceView> findBalanceViewByIdAndUserId(@Param("accountId") Long accountId, @Param("userId") Long userId);
+
+    // The user's accounts for listing, without creating managed entities
+    @Query(value = "SELECT a.id AS id, a.account_number AS \"accountNumber\", a.account_type AS \"accountType\", " +
+            TOTAL_BALANCE + " AS balance, a.status AS status FROM accounts a WHERE a.user_id = :userId ORDER BY a.id",
+            nativeQuery = true)
+    List<AccountSummaryView> findSummaryViewsByUserId(@Param("userId") Long userId);
+
+    // Take money out of an account that isn't closed, only if the balance covers it, returns the number of rows
+    // changed (0 or 1). The status is checked here for the same reason as in credit().
+    // The balance updates are native so the amount is bound as the column's NUMERIC, not through the Money converter.
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE accounts SET balance = balance - :amount, updated_at = CURRENT_TIMESTAMP, version = version + 1 " +
+            "WHERE account_number = :accountNumber AND status <> 'CLOSED' AND balance >= :amount", nativeQuery = true)
+    int debit(@Param("accountNumber") String accountNumber, @Param("amount") BigDecimal amount);
+
+    // Put money into an account that isn't closed, returns the number of rows changed (0 or 1).
+    // The status is checked here because the directory cache callers validate against may be stale.
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE accounts SET balance = balance + :amount, updated_at = CURRENT_TIMESTAMP, version = version + 1 " +
+            "WHERE account_number = :accountNumber AND status <> 'CLOSED'", nativeQuery = true)
+    int credit(@Param("accountNumber") String accountNumber, @Param("amount") BigDecimal amount);
+
+    // Put money into an account owned by the given user that isn't closed, returns the number of rows changed (0 or 1)
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE accounts SET balance = balance + :amount, updated_at = CURRENT_TIMESTAMP, version = version + 1 " +
+            "WHERE account_number = :accountNumber AND user_id = :userId AND status <> 'CLOSED'", nativeQuery = true)
+    int creditOwnedBy(@Param("accountNumber") String accountNumber, @Param("userId") Long userId,
+                      @Param("amount") BigDecimal amount);
 }
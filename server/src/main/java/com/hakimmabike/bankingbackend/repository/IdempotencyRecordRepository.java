@@ -0,0 +1,56 @@
+package com.hakimmabike.bankingbackend.repository;
+
+import com.hakimmabike.bankingbackend.entity.IdempotencyRecord;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+    // Claim a key for a request that is about to run, returns 0 if another request already holds it.
+    // A key past its TTL is free again, and so is a claim of the same request whose lease has run out.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO idempotency_keys (idempotency_key, status, request_hash, claimed_until, created_at, expires_at) " +
+            "VALUES (:key, 'IN_PROGRESS', :requestHash, :claimedUntil, :now, :expiresAt) " +
+            "ON CONFLICT (idempotency_key) DO UPDATE SET status = 'IN_PROGRESS', request_hash = EXCLUDED.request_hash, " +
+            "claimed_until = EXCLUDED.claimed_until, created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at, " +
+            "response_status = NULL, response_content_type = NULL, response_body = NULL " +
+            "WHERE idempotency_keys.expires_at < :now " +
+            "OR (idempotency_keys.status = 'IN_PROGRESS' " +
+            "AND (idempotency_keys.claimed_until IS NULL OR idempotency_keys.claimed_until < :now) " +
+            "AND (idempotency_keys.request_hash IS NULL OR idempotency_keys.request_hash = EXCLUDED.request_hash))",
+            nativeQuery = true)
+    int claim(@Param("key") String key, @Param("requestHash") String requestHash,
+              @Param("claimedUntil") LocalDateTime claimedUntil, @Param("now") LocalDateTime now,
+              @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Store the response of a finished request so retries can replay it. Matches nothing if the claim
+    // was taken over after its lease ran out.
+    @Modifying
+    @Transactional
+    @Query("UPDATE IdempotencyRecord r SET r.status = com.hakimmabike.bankingbackend.enums.IdempotencyStatus.COMPLETED, " +
+            "r.responseStatus = :responseStatus, r.responseContentType = :contentType, r.responseBody = :body " +
+            "WHERE r.key = :key AND r.claimedUntil = :claimedUntil")
+    int complete(@Param("key") String key, @Param("claimedUntil") LocalDateTime claimedUntil,
+                 @Param("responseStatus") int responseStatus, @Param("contentType") String contentType,
+                 @Param("body") String body);
+
+    // Drop the claim of a request that failed, so a retry runs it again
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.key = :key AND r.claimedUntil = :claimedUntil " +
+            "AND r.status = com.hakimmabike.bankingbackend.enums.IdempotencyStatus.IN_PROGRESS")
+    int release(@Param("key") String key, @Param("claimedUntil") LocalDateTime claimedUntil);
+
+    // Purge keys past their TTL
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -5,16 +5,21 @@ import com.hakimmabike.bankingbackend.entity.Transaction;
 import com.hakimmabike.bankingbackend.entity.TransactionCategory;
 import com.hakimmabike.bankingbackend.enums.TransactionStatus;
 import com.hakimmabike.bankingbackend.enums.TransactionType;
+import jakarta.persistence.QueryHint;
 import jakarta.transaction.Transactional;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
@@ -22,23 +27,49 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     Optional<Transaction> findByTransactionNumber(String transactionNumber);
 
     // Find transactions by account
+    @EntityGraph("Transaction.details")
     List<Transaction> findByAccount(Account account);
 
     // Find transactions by accounts
+    @EntityGraph("Transaction.details")
     List<Transaction> findByAccountIn(List<Account> accounts);
 
     // Find transactions by account and transaction type
+    @EntityGraph("Transaction.details")
     List<Transaction> findByAccountAndTransactionType(Account account, TransactionType type);
 
     // Find transactions by account and status
+    @EntityGraph("Transaction.details")
     List<Transaction> findByAccountAndStatus(Account account, TransactionStatus status);
 
     // Find transactions between two dates
+    @EntityGraph("Transaction.details")
     List<Transaction> findByTransactionDateBetween(LocalDateTime start, LocalDateTime end);
 
     // finds transactions by category
+    @EntityGraph("Transaction.details")
     List<Transaction> findByTransactionCategory(TransactionCategory category);
 
+    // Stream a user's transactions oldest first for export, the driver fetches rows in chunks instead of all at once.
+    // Must be consumed inside a transaction so Postgres keeps a cursor open.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t FROM Transaction t LEFT JOIN FETCH t.transactionCategory " +
+            "WHERE t.account.user.id = :userId ORDER BY t.transactionDate, t.id")
+    Stream<Transaction> streamByUserId(@Param("userId") Long userId);
+
+    // Same as streamByUserId, limited to one of the user's accounts
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT t FROM Transaction t LEFT JOIN FETCH t.transactionCategory " +
+            "WHERE t.account.user.id = :userId AND t.accountNumber = :accountNumber ORDER BY t.transactionDate, t.id")
+    Stream<Transaction> streamByUserIdAndAccountNumber(@Param("userId") Long userId,
+                                                       @Param("accountNumber") String accountNumber);
+
     // Delete transactions by account
     @Modifying
     @Transactional
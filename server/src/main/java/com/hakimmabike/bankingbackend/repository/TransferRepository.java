@@ -1,35 +1,68 @@
 package com.hakimmabike.bankingbackend.repository;
 
+import com.hakimmabike.bankingbackend.dto.transaction.TransferStatusView;
 import com.hakimmabike.bankingbackend.entity.Account;
 import com.hakimmabike.bankingbackend.entity.Transfer;
 import com.hakimmabike.bankingbackend.enums.TransactionStatus;
+import jakarta.persistence.LockModeType;
 import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface TransferRepository extends JpaRepository<Transfer, Long> {
     // finds transfers by from account
     @Query("SELECT t FROM Transfer t WHERE t.senderAccount = :account")
+    @EntityGraph("Transfer.parties")
     List<Transfer> findByFromAccount(Account account);
 
     // finds transfers by to account
     @Query("SELECT t FROM Transfer t WHERE t.receiverAccount = :account")
+    @EntityGraph("Transfer.parties")
     List<Transfer> findByToAccount(Account account);
 
     // finds transfers by both from and to accounts
     @Query("SELECT t FROM Transfer t WHERE t.senderAccount = :fromAccount AND t.receiverAccount = :toAccount")
+    @EntityGraph("Transfer.parties")
     List<Transfer> findByFromAccountAndToAccount(Account fromAccount, Account toAccount);
 
     // finds transfers by status
+    @EntityGraph("Transfer.parties")
     List<Transfer> findByStatus(TransactionStatus status);
 
+    // Load transfers with both parties in one query, so reading their accounts later costs nothing
+    @EntityGraph("Transfer.parties")
+    List<Transfer> findWithPartiesByIdIn(Collection<Long> ids);
+
+    // Status of a transfer sent from one of the user's accounts, read without loading the transfer or its accounts
+    @Query("SELECT new com.hakimmabike.bankingbackend.dto.transaction.TransferStatusView(t.id, t.amount, t.status, t.failureReason) " +
+            "FROM Transfer t WHERE t.id = :id AND t.senderAccount.user.id = :userId")
+    Optional<TransferStatusView> findStatusViewByIdAndSenderUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    // Lock a transfer that is still in the given status, empty once another worker has already applied it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT t FROM Transfer t WHERE t.id = :id AND t.status = :status")
+    Optional<Transfer> findByIdAndStatusForUpdate(@Param("id") Long id, @Param("status") TransactionStatus status);
+
+    // Mark a pending transfer as failed, returns the number of rows changed (0 or 1)
+    @Modifying
+    @Transactional
+    @Query("UPDATE Transfer t SET t.status = :failed, t.failureReason = :reason WHERE t.id = :id AND t.status = :pending")
+    int markFailed(@Param("id") Long id, @Param("reason") String reason,
+                   @Param("pending") TransactionStatus pending, @Param("failed") TransactionStatus failed);
+
     // finds transfers between two dates
+    @EntityGraph("Transfer.parties")
     List<Transfer> findByTransferDateBetween(LocalDateTime start, LocalDateTime end);
 
     // delete all transfers by account (sender or receiver)
@@ -21,6 +21,8 @@ public class AccountSecurityRules implements SecurityRules {
                 .requestMatchers(HttpMethod.GET, "api/accounts/{userId}/total-balance").hasAnyRole(Role.ADMIN.name(), Role.USER.name())
                 .requestMatchers(HttpMethod.POST, "api/accounts/transaction/{userId}/deposit").hasAnyRole(Role.ADMIN.name(), Role.USER.name())
                 // Allow users with the ADMIN role to change account status
-                .requestMatchers(HttpMethod.PATCH, "api/accounts/{userId}/{accountId}/status").hasAnyRole(Role.ADMIN.name(), Role.USER.name());
+                .requestMatchers(HttpMethod.PATCH, "api/accounts/{userId}/{accountId}/status").hasAnyRole(Role.ADMIN.name(), Role.USER.name())
+                // Only admins decide which accounts get balance shards
+                .requestMatchers(HttpMethod.PATCH, "/api/accounts/{userId}/{accountId}/balance-shards").hasRole(Role.ADMIN.name());
     }
 }
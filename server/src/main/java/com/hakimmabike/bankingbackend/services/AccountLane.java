@@ -0,0 +1,170 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A single-threaded lane that owns a subset of accounts. Every mutation for those accounts is queued here
+ * and applied one after another, so the lane never races with itself on an account row. Queued tasks are
+ * committed in small groups: one DB transaction for up to {@code batchSize} tasks. A lane can also linger
+ * for a few milliseconds after the first task to let a group fill up. Callers wait a bounded time for space
+ * in a full queue and get a {@link ServiceBusyException} after that, as they do once the lane is stopped.
+ */
+public class AccountLane implements Runnable {
+    private final BlockingQueue<Task<?>> queue;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final long offerTimeoutMillis;
+    private final Thread thread;
+    private volatile boolean running = true;
+    // Taken off the queue while filling a group but has to commit on its own, runs next
+    private Task<?> carried;
+
+    // lingerMillis: how long to wait for more tasks after the first one, 0 only groups what is already queued
+    // offerTimeoutMillis: how long a caller waits for space in a full queue before being turned away
+    public AccountLane(String name, int queueCapacity, int batchSize, long lingerMillis, long offerTimeoutMillis,
+                       TransactionTemplate transactionTemplate) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.transactionTemplate = transactionTemplate;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    // Queue work that can be committed together with other work of this lane
+    public <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return enqueue(new Task<>(work, true));
+    }
+
+    // Queue work that must be committed on its own, e.g. a transfer that also touches another lane's account
+    public <T> CompletableFuture<T> submitAlone(Supplier<T> work) {
+        return enqueue(new Task<>(work, false));
+    }
+
+    private <T> CompletableFuture<T> enqueue(Task<T> task) {
+        if (!running) {
+            throw new ServiceBusyException("Service is shutting down, please try again");
+        }
+        try {
+            if (!queue.offer(task, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new ServiceBusyException("Too many requests in progress, please try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+            return task.future;
+        }
+        // stop() may have run since the check above and the lane may already have drained its queue and exited.
+        // Whoever takes the task back out owns it: if the lane got it first it still runs.
+        if (!running && queue.remove(task)) {
+            throw new ServiceBusyException("Service is shutting down, please try again");
+        }
+        return task.future;
+    }
+
+    @Override
+    public void run() {
+        List<Task<?>> batch = new ArrayList<>(batchSize);
+        while (running || carried != null || !queue.isEmpty()) {
+            try {
+                Task<?> first = carried != null ? carried : queue.poll(100, TimeUnit.MILLISECONDS);
+                carried = null;
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Only group tasks that stay inside this lane, a task that must commit alone ends the group
+                long deadline = System.nanoTime() + lingerNanos;
+                while (first.groupable && batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Task<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (!next.groupable) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                // stop() interrupts the lane, the loop condition decides whether to keep draining.
+                // Tasks already taken for this group still have to run.
+                if (!batch.isEmpty()) {
+                    commit(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Task<?>> batch) {
+        if (batch.size() == 1) {
+            batch.get(0).runAlone(transactionTemplate);
+            return;
+        }
+        try {
+            List<Object> results = transactionTemplate.execute(status -> {
+                List<Object> values = new ArrayList<>(batch.size());
+                for (Task<?> task : batch) {
+                    values.add(task.work.get());
+                }
+                return values;
+            });
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            // One task failed and rolled the whole group back, replay each task in its own transaction
+            for (Task<?> task : batch) {
+                task.runAlone(transactionTemplate);
+            }
+        }
+    }
+
+    private static final class Task<T> {
+        private final Supplier<T> work;
+        private final boolean groupable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Supplier<T> work, boolean groupable) {
+            this.work = work;
+            this.groupable = groupable;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(Object value) {
+            future.complete((T) value);
+        }
+
+        private void runAlone(TransactionTemplate transactionTemplate) {
+            try {
+                future.complete(transactionTemplate.execute(status -> work.get()));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.LaneConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Entry point for money-moving operations. When lanes are disabled it calls {@link TransactionService}
+ * directly. When enabled, each account number is hashed to one of N single-threaded {@link AccountLane}s
+ * and every operation runs on the lane that owns the account it takes money from (the account it pays into
+ * for deposits). Credits only ever add to a balance, so a transfer's credit to an account owned by another
+ * lane is handed off inside the source lane's transaction without breaking the destination lane's funds checks.
+ * Deposits go to the {@link DepositLedgerWriter} instead when group commit is enabled.
+ * None of these go through {@link OptimisticRetryTemplate}: their balance updates are single guarded UPDATE
+ * statements that serialise on the row lock and never check the version, so there is no conflict to retry.
+ */
+@Service
+@RequiredArgsConstructor
+public class AccountLaneExecutor {
+    private final TransactionService transactionService;
+    private final LaneConfig laneConfig;
+    private final PlatformTransactionManager transactionManager;
+    private final DepositLedgerWriter depositLedgerWriter;
+
+    private AccountLane[] lanes;
+
+    @PostConstruct
+    public void start() {
+        if (!laneConfig.isEnabled()) {
+            return;
+        }
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        lanes = new AccountLane[laneConfig.getCount()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new AccountLane("account-lane-" + i, laneConfig.getQueueCapacity(),
+                    laneConfig.getBatchSize(), 0, laneConfig.getOfferTimeoutMs(), transactionTemplate);
+            lanes[i].start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (lanes != null) {
+            for (AccountLane lane : lanes) {
+                lane.stop();
+            }
+        }
+    }
+
+    public TransactionDto deposit(Long userId, DepositRequest request, ValidationContext context) {
+        if (depositLedgerWriter.isEnabled()) {
+            return await(depositLedgerWriter.deposit(userId, request, context));
+        }
+        if (lanes == null) {
+            return transactionService.deposit(userId, request, context);
+        }
+        return await(laneFor(request.getAccountNumber())
+                .submit(() -> transactionService.deposit(userId, request, context)));
+    }
+
+    public TransactionDto withdraw(WithdrawRequest request, ValidationContext context) {
+        if (lanes == null) {
+            return transactionService.withdraw(request, context);
+        }
+        return await(laneFor(request.getAccountNumber())
+                .submit(() -> transactionService.withdraw(request, context)));
+    }
+
+    public TransferDto transfer(TransferRequest request) {
+        if (lanes == null) {
+            return transactionService.transfer(request);
+        }
+        AccountLane source = laneFor(request.getFromAccount());
+        // Both accounts in the same lane: the transfer can be grouped like any other lane task.
+        // Otherwise it commits on its own so a group never holds locks on another lane's rows.
+        if (source == laneFor(request.getToAccount())) {
+            return await(source.submit(() -> transactionService.transfer(request)));
+        }
+        return await(source.submitAlone(() -> transactionService.transfer(request)));
+    }
+
+    // Whether deposits run on the calling thread, and so join a transaction the caller has open
+    public boolean depositsOnCallingThread() {
+        return !depositLedgerWriter.isEnabled() && lanes == null;
+    }
+
+    // Whether withdrawals and transfers run on the calling thread
+    public boolean withdrawalsAndTransfersOnCallingThread() {
+        return lanes == null;
+    }
+
+    private AccountLane laneFor(String accountNumber) {
+        return lanes[Math.floorMod(accountNumber.hashCode(), lanes.length)];
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // Rethrow the service's own exception so callers see the same errors as the direct path
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
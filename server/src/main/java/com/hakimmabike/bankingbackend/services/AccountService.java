@@ -1,18 +1,24 @@
 package com.hakimmabike.bankingbackend.services;
 
+import com.hakimmabike.bankingbackend.cache.AccountDirectory;
 import com.hakimmabike.bankingbackend.dto.account.*;
 import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
 import com.hakimmabike.bankingbackend.entity.User;
 import com.hakimmabike.bankingbackend.enums.AccountStatus;
 import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
 import com.hakimmabike.bankingbackend.exception.InvalidObjectException;
 import com.hakimmabike.bankingbackend.exception.ObjectExistsException;
 import com.hakimmabike.bankingbackend.mappers.AccountMapper;
 import com.hakimmabike.bankingbackend.repository.*;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.transaction.Transactional;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.util.Collections;
@@ -27,6 +33,8 @@ public class AccountService {
     private final TransactionCategoryRepository categoryRepository;
     private final TransferRepository transferRepository;
     private final AccountMapper accountMapper;
+    private final BalanceShardService balanceShards;
+    private final AccountDirectory accountDirectory;
 
     public String generateAccountNumber() {
         return String.valueOf((int) (Math.random() * 90000000) + 10000000);
@@ -47,15 +55,17 @@ public class AccountService {
         account.setUser(user);
         account.setAccountNumber(generateAccountNumber());
         account.setStatus(AccountStatus.OPEN);
-        account.setBalance(BigDecimal.ZERO);
+        account.setBalance(Money.ZERO);
 
         accountRepository.save(account);
+        accountDirectory.invalidate(account.getAccountNumber());
 
         // Map the saved account entity to a DTO
         return accountMapper.toDto(account);
     }
 
-    // Update account status
+    // Update account status. One transaction, so the status checked is the one the versioned save replaces.
+    @Transactional
     public AccountDto changeAccountStatus(Long userId, Long accountId, UpdateAccountStatusRequest request) {
         Account account = accountRepository.findByIdAndUserId(accountId, userId)
                 .orElseThrow(() -> new EntityNotFoundException("Account not found"));
@@ -64,77 +74,95 @@ public class AccountService {
         if (!AccountStatus.isValidStatus(request.getStatus())) {
             throw new InvalidObjectException("Invalid account status provided.");
         }
+        AccountStatus status = AccountStatus.valueOf(request.getStatus());
+        if (status == AccountStatus.CLOSED && account.getStatus() == AccountStatus.CLOSED) {
+            throw new AccountStatusException("Account with ID " + accountId + " is already closed.");
+        }
 
         // Update the account status
-        account.setStatus(AccountStatus.valueOf(request.getStatus()));
+        account.setStatus(status);
         accountRepository.save(account);
+        // Drop the cached status once the change is committed, so closed-account checks see it straight away.
+        // Dropped any earlier, a lookup could still read the old status and cache it again.
+        String accountNumber = account.getAccountNumber();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accountDirectory.invalidate(accountNumber);
+            }
+        });
         // Map the updated account entity to a DTO
         return accountMapper.toDto(account);
     }
 
-    public List<AccountDto> getUserAccounts(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
+    // Spread credits to a hot account over sub-balances, 0 shards turns it back into an ordinary account
+    public BalanceDto changeBalanceShards(Long userId, Long accountId, UpdateBalanceShardsRequest request) {
+        if (!accountRepository.existsByIdAndUserId(accountId, userId)) {
+            throw new EntityNotFoundException("Account not found");
+        }
+        balanceShards.setShardCount(accountId, request.getShards());
+        return getAccountBalance(accountId, userId);
+    }
 
-        // check if user has accounts
-        if (!accountRepository.existsByUser(user)) {
+    public List<AccountDto> getUserAccounts(Long userId) {
+        // One projection query, the user is only looked up when there is nothing to show
+        List<AccountSummaryView> accounts = accountRepository.findSummaryViewsByUserId(userId);
+        if (accounts.isEmpty()) {
+            if (!userRepository.existsById(userId)) {
+                throw new EntityNotFoundException("User not found");
+            }
             return Collections.emptyList();
         }
-        return accountRepository.findByUser(user)
-                .stream()
-                .map(accountMapper::toDto)
+        return accounts.stream()
+                .map(account -> new AccountDto(account.getId(), account.getAccountNumber(),
+                        account.getAccountType().name(), account.getBalance().toBigDecimal(), account.getStatus().name()))
                 .toList();
     }
 
     public BalanceDto getAccountBalance(Long accountId, Long userId) {
-        var account = accountRepository.findByIdAndUserId(accountId, userId)
+        var account = accountRepository.findBalanceViewByIdAndUserId(accountId, userId)
                 .orElseThrow(() -> new EntityNotFoundException("Account not found"));
 
-        return new BalanceDto(account.getAccountNumber() ,account.getBalance());
+        return getAccountBalance(account);
+    }
+
+    // Balance of an account the caller has already read, shards included
+    public BalanceDto getAccountBalance(AccountBalanceView account) {
+        return new BalanceDto(account.getAccountNumber(), account.getBalance().toBigDecimal());
     }
 
     // Get account balance by account number
     public BigDecimal getAccountBalanceByAccountNumber(@NotNull String accountNumber) {
-        Account account = accountRepository.findByAccountNumber(accountNumber)
+        var account = accountRepository.findBalanceViewByAccountNumber(accountNumber)
                 .orElseThrow(() -> new EntityNotFoundException("Account not found with account number: " + accountNumber));
-        return account.getBalance();
+        return account.getBalance().toBigDecimal();
     }
 
     public boolean accountExists(String accountNumber) {
         try {
-            return accountRepository.existsByAccountNumber(accountNumber);
+            return accountDirectory.exists(accountNumber);
         } catch (Exception e) {
             return false;
         }
     }
 
     public TotalBalanceDto getTotalBalance(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
-
-        // check if user has accounts
-        if (!accountRepository.existsByUser(user)) {
-            return new TotalBalanceDto(BigDecimal.ZERO);
+        if (!userRepository.existsById(userId)) {
+            throw new EntityNotFoundException("User not found");
         }
 
-        List<Account> accounts = accountRepository.findByUser(user);
-        BigDecimal totalBalance = accounts.stream()
-                .map(Account::getBalance)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        return new TotalBalanceDto(totalBalance);
+        // Summed in the database, shards included, zero if the user has no accounts
+        return new TotalBalanceDto(accountRepository.sumBalanceByUserId(userId));
     }
 
     public ActiveAccountsDto getActiveAccountsCount(Long userId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException("User not found"));
-
-        List<Account> accounts = accountRepository.findByUser(user);
+        if (!userRepository.existsById(userId)) {
+            throw new EntityNotFoundException("User not found");
+        }
 
-        int activeAccountsCount = (int) accounts.stream()
-                .filter(account -> account.getStatus() == AccountStatus.OPEN)
-                .count();
+        // Counted in the database instead of loading every account
+        long activeAccountsCount = accountRepository.countByUserIdAndStatus(userId, AccountStatus.OPEN);
 
-        return new ActiveAccountsDto( activeAccountsCount );
+        return new ActiveAccountsDto(Math.toIntExact(activeAccountsCount));
     }
 }
@@ -0,0 +1,154 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.archive.ArchivedTransaction;
+import com.hakimmabike.bankingbackend.archive.TransactionArchive;
+import com.hakimmabike.bankingbackend.config.ArchiveConfig;
+import jakarta.annotation.PostConstruct;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves transactions older than the hot window out of the transactions table into the archive, oldest first
+ * and one segment per account at a time. Each move writes the segment, lists it in archive_segments, deletes
+ * exactly the rows it holds and commits; a move that fails rolls back and leaves the rows in the table.
+ *
+ * Every instance may run this against the shared archive. A move holds a per-account advisory lock until it
+ * commits, so two instances never move the same account's rows at once.
+ */
+@Service
+public class ArchivalService {
+    private static final String SELECT_SQL =
+            "SELECT t.id, t.transaction_number, t.transaction_type, t.amount, t.balance_after, c.name AS category_name, " +
+                    "t.description, t.code, t.sender, t.reciever, t.account_number, t.status, t.transaction_date " +
+                    "FROM transactions t LEFT JOIN transaction_categories c ON c.id = t.category_id " +
+                    "WHERE t.account_id = ? AND t.transaction_date < ? " +
+                    "ORDER BY t.transaction_date, t.id LIMIT ?";
+    // The date bound repeats the cutoff so only the partitions before it are touched
+    private static final String DELETE_SQL =
+            "DELETE FROM transactions WHERE account_id = ? AND transaction_date < ? AND (transaction_date, id) <= (?, ?)";
+    // First key of the advisory locks taken on accounts being archived, the second is the account id's hash
+    private static final int ACCOUNT_LOCK_CLASS = 0x41524348; // "ARCH"
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionArchive archive;
+    private final ArchiveConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    public ArchivalService(JdbcTemplate jdbcTemplate, TransactionArchive archive, ArchiveConfig config,
+                           PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archive = archive;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Delete segment files this instance wrote but never listed: their move rolled back or the process died
+    // before it committed. The account lock waits out a move of the account still in flight, which may have
+    // listed its file by the time the lock is granted.
+    @PostConstruct
+    public void recover() {
+        for (Map.Entry<Path, Long> file : archive.findUnlistedOwnFiles().entrySet()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.query("SELECT pg_advisory_xact_lock(?, ?)", rs -> {
+                }, ACCOUNT_LOCK_CLASS, Long.hashCode(file.getValue()));
+                if (!archive.isListed(file.getValue(), file.getKey())) {
+                    archive.delete(file.getKey());
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${banking.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        archiveOlderThan(LocalDateTime.now().minus(config.getHotWindow()));
+    }
+
+    // Archive every transaction dated before cutoff, returns how many were moved
+    public int archiveOlderThan(LocalDateTime cutoff) {
+        List<Long> accountIds = jdbcTemplate.queryForList(
+                "SELECT DISTINCT account_id FROM transactions WHERE transaction_date < ?",
+                Long.class, Timestamp.valueOf(cutoff));
+        int archived = 0;
+        for (Long accountId : accountIds) {
+            archived += archiveOlderThan(accountId, cutoff);
+        }
+        return archived;
+    }
+
+    // Archive the account's transactions dated before cutoff, a segment at a time
+    public int archiveOlderThan(long accountId, LocalDateTime cutoff) {
+        int archived = 0;
+        int moved;
+        do {
+            moved = archiveSegment(accountId, cutoff);
+            archived += moved;
+        } while (moved == config.getMaxRowsPerSegment());
+        return archived;
+    }
+
+    // Move the account's oldest rows before cutoff into one segment
+    private int archiveSegment(long accountId, LocalDateTime cutoff) {
+        return transactionTemplate.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(?, ?)", Boolean.class,
+                    ACCOUNT_LOCK_CLASS, Long.hashCode(accountId));
+            if (!Boolean.TRUE.equals(locked)) {
+                // Another instance is moving this account's rows right now, it is left to that one
+                return 0;
+            }
+            List<ArchivedTransaction> rows = jdbcTemplate.query(SELECT_SQL, (rs, i) -> new ArchivedTransaction(
+                    rs.getLong("id"),
+                    rs.getString("transaction_number"),
+                    rs.getString("transaction_type"),
+                    rs.getBigDecimal("amount"),
+                    rs.getBigDecimal("balance_after"),
+                    rs.getString("category_name"),
+                    rs.getString("description"),
+                    rs.getString("code"),
+                    rs.getBoolean("sender"),
+                    rs.getBoolean("reciever"),
+                    rs.getString("account_number"),
+                    rs.getString("status"),
+                    rs.getTimestamp("transaction_date").toLocalDateTime()
+            ), accountId, Timestamp.valueOf(cutoff), config.getMaxRowsPerSegment());
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            ArchivedTransaction last = rows.get(rows.size() - 1);
+            List<ArchivedTransaction> newestFirst = new ArrayList<>(rows);
+            Collections.reverse(newestFirst);
+
+            Path segment;
+            try {
+                segment = archive.write(accountId, newestFirst);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            archive.list(accountId, segment, newestFirst);
+
+            int deleted = jdbcTemplate.update(DELETE_SQL, accountId, Timestamp.valueOf(cutoff),
+                    Timestamp.valueOf(last.transactionDate()), last.id());
+            if (deleted != rows.size()) {
+                // Something else changed these rows meanwhile, the rollback also deletes the segment file
+                throw new IllegalStateException("Archiving account " + accountId + " wrote " + rows.size() +
+                        " transactions but would delete " + deleted);
+            }
+            return deleted;
+        });
+    }
+}
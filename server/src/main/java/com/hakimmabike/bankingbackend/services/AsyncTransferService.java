@@ -0,0 +1,154 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.AsyncTransferConfig;
+import com.hakimmabike.bankingbackend.enums.TransactionStatus;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
+import com.hakimmabike.bankingbackend.exception.InsufficientFundsException;
+import com.hakimmabike.bankingbackend.exception.NoAccountException;
+import com.hakimmabike.bankingbackend.exception.TransferException;
+import com.hakimmabike.bankingbackend.repository.TransferRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies transfers recorded as PENDING by the asynchronous transfer endpoint. Each worker claims a batch of
+ * pending transfers with {@code FOR UPDATE SKIP LOCKED}, so workers (also on other instances) never claim
+ * the same rows, and stamps them with a lease. The batch is applied in one DB transaction; if any transfer
+ * in it fails, each one is applied again in its own transaction and business failures are recorded as
+ * FAILED. If a worker dies, its transfers stay PENDING and are claimed again once the lease runs out.
+ *
+ * Unexpected failures are logged and counted in banking.async_transfers.errors (tagged by stage). A transfer
+ * still failing that way on its max-attempts'th claim is marked FAILED instead of being retried forever.
+ *
+ * Workers only start where banking.async-transfers.enabled is set. Transfers accepted by any instance are
+ * left PENDING until an instance with workers claims them.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AsyncTransferService {
+    private final TransactionService transactionService;
+    private final TransferRepository transferRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final AsyncTransferConfig config;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        if (!config.isEnabled()) {
+            return;
+        }
+        for (int i = 0; i < config.getWorkers(); i++) {
+            Thread worker = new Thread(this::work, "transfer-worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                if (processBatch() == 0) {
+                    Thread.sleep(config.getPollIntervalMs());
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts the workers, the loop condition decides whether to carry on
+            } catch (RuntimeException e) {
+                // e.g. the database is unreachable, claimed transfers are retried once their lease runs out
+                log.warn("Async transfer worker failed, retrying after {} ms", config.getPollIntervalMs(), e);
+                meterRegistry.counter("banking.async_transfers.errors", "stage", "worker").increment();
+                try {
+                    Thread.sleep(config.getPollIntervalMs());
+                } catch (InterruptedException ignored) {
+                    // stopping
+                }
+            }
+        }
+    }
+
+    // Claim and apply one batch of pending transfers, returns how many were claimed
+    public int processBatch() {
+        Map<Long, Integer> attempts = claim();
+        if (attempts.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(attempts.keySet());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // Load the batch with its sender and receiver accounts in one query, applying each transfer
+                // then finds them in the persistence context instead of selecting two accounts per transfer
+                transferRepository.findWithPartiesByIdIn(ids);
+                ids.forEach(transactionService::completePendingTransfer);
+            });
+        } catch (RuntimeException e) {
+            // One transfer failed and rolled the whole batch back, apply each transfer on its own
+            ids.forEach(id -> processOne(id, attempts.get(id)));
+        }
+        return ids.size();
+    }
+
+    // Claimed transfer ids in id order, each with the number of times it has been claimed so far
+    private Map<Long, Integer> claim() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, Integer> claimed = new TreeMap<>();
+        jdbcTemplate.query(
+                "UPDATE transfers SET claimed_until = ?, attempts = attempts + 1 WHERE id IN (" +
+                        "SELECT id FROM transfers WHERE status = ? AND (claimed_until IS NULL OR claimed_until < ?) " +
+                        "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) RETURNING id, attempts",
+                (RowCallbackHandler) rs -> claimed.put(rs.getLong("id"), rs.getInt("attempts")),
+                Timestamp.valueOf(now.plus(config.getClaimTimeout())), TransactionStatus.PENDING.name(),
+                Timestamp.valueOf(now), config.getBatchSize());
+        return claimed;
+    }
+
+    private void processOne(Long transferId, int attempt) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> transactionService.completePendingTransfer(transferId));
+        } catch (InsufficientFundsException | NoAccountException | AccountStatusException | TransferException
+                 | EntityNotFoundException e) {
+            // The transfer can never succeed, anything else is left PENDING and retried after the lease
+            transferRepository.markFailed(transferId, e.getMessage(), TransactionStatus.PENDING, TransactionStatus.FAILED);
+        } catch (RuntimeException e) {
+            // Left PENDING and retried after the lease, the rest of the batch still goes ahead
+            meterRegistry.counter("banking.async_transfers.errors", "stage", "transfer").increment();
+            if (attempt < config.getMaxAttempts()) {
+                log.warn("Transfer {} failed on attempt {} of {}, retrying after the lease", transferId, attempt,
+                        config.getMaxAttempts(), e);
+                return;
+            }
+            log.error("Transfer {} failed on all {} attempts, marking it FAILED", transferId, attempt, e);
+            meterRegistry.counter("banking.async_transfers.exhausted").increment();
+            transferRepository.markFailed(transferId, "Failed after " + attempt + " attempts",
+                    TransactionStatus.PENDING, TransactionStatus.FAILED);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.BalanceShardConfig;
+import com.hakimmabike.bankingbackend.entity.Money;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sub-balances for hot accounts. An account flagged with K shards gets K rows in account_balance_shards,
+ * credits go to a random shard instead of the account row, and the account's balance is the account row
+ * plus all of its shards. Debits still only take from the account row, so when it can't cover a debit the
+ * shards are folded back into it (compacted) under the account row lock and the debit is tried again.
+ * Compaction also runs periodically. Balance reads add the shards up in the same statement as the account row,
+ * so a compaction committing in between can't make money disappear from the total.
+ *
+ * Lock order: account rows first (in account number order), then shard rows. Compaction locks the account row and
+ * then its shards, so a transaction that credits a shard must not lock an account row afterwards. Transfers debit
+ * before they credit a shard for that reason. Account rows are locked FOR NO KEY UPDATE like the balance UPDATEs
+ * themselves, so the foreign key checks of transfer and ledger inserts never wait on a compaction.
+ * A stale shard cache can still send a credit to the account row out of order; Postgres detects the resulting
+ * deadlock and fails one of the transactions.
+ */
+@Service
+@RequiredArgsConstructor
+public class BalanceShardService {
+    private final JdbcTemplate jdbcTemplate;
+    private final BalanceShardConfig config;
+    private final PlatformTransactionManager transactionManager;
+
+    // Account number -> shard count of every sharded account. Only used to skip the shard update for
+    // ordinary accounts, a stale entry just sends a credit to the account row, which is always correct.
+    private volatile Map<String, Integer> hotAccounts = Map.of();
+
+    @Scheduled(fixedDelayString = "${banking.balance-shards.refresh-interval-ms:10000}")
+    public void refresh() {
+        Map<String, Integer> accounts = new HashMap<>();
+        jdbcTemplate.query("SELECT account_number, balance_shards FROM accounts WHERE balance_shards > 0",
+                rs -> {
+                    accounts.put(rs.getString("account_number"), rs.getInt("balance_shards"));
+                });
+        hotAccounts = Map.copyOf(accounts);
+    }
+
+    // Put money into a random shard of a sharded account, returns 0 when the account row has to be credited instead
+    public int creditShard(String accountNumber, Long userId, Money amount) {
+        Integer shards = hotAccounts.get(accountNumber);
+        if (shards == null) {
+            return 0;
+        }
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+        if (userId == null) {
+            return jdbcTemplate.update(
+                    "UPDATE account_balance_shards s SET balance = s.balance + ? FROM accounts a " +
+                            "WHERE a.account_number = ? AND a.status <> 'CLOSED' AND s.account_id = a.id AND s.shard = ?",
+                    amount.toBigDecimal(), accountNumber, shard);
+        }
+        return jdbcTemplate.update(
+                "UPDATE account_balance_shards s SET balance = s.balance + ? FROM accounts a " +
+                        "WHERE a.account_number = ? AND a.user_id = ? AND a.status <> 'CLOSED' AND s.account_id = a.id AND s.shard = ?",
+                amount.toBigDecimal(), accountNumber, userId, shard);
+    }
+
+    // Whether credits to the account go to its shards, as far as the last refresh knows
+    public boolean isSharded(String accountNumber) {
+        return hotAccounts.containsKey(accountNumber);
+    }
+
+    // Lock a sharded account and fold its shards into the account row, returns true if any money was moved
+    @Transactional
+    public boolean compact(String accountNumber) {
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM accounts WHERE account_number = ? AND balance_shards > 0 FOR NO KEY UPDATE",
+                Long.class, accountNumber);
+        return !ids.isEmpty() && drainShards(ids.get(0)).isPositive();
+    }
+
+    // Move every shard's balance into the account row, the caller must already hold the account row lock
+    @Transactional
+    public Money drainShards(long accountId) {
+        BigDecimal total = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(balance), 0) FROM " +
+                        "(SELECT balance FROM account_balance_shards WHERE account_id = ? FOR UPDATE) s",
+                BigDecimal.class, accountId);
+        if (total.signum() > 0) {
+            jdbcTemplate.update("UPDATE account_balance_shards SET balance = 0 WHERE account_id = ? AND balance <> 0",
+                    accountId);
+            jdbcTemplate.update("UPDATE accounts SET balance = balance + ?, version = version + 1, " +
+                    "updated_at = CURRENT_TIMESTAMP WHERE id = ?", total, accountId);
+        }
+        return Money.of(total);
+    }
+
+    // Change the number of shards of an account, 0 turns sharding off. Existing shard balances are kept.
+    @Transactional
+    public void setShardCount(Long accountId, int shards) {
+        if (shards < 0 || shards > config.getMaxShards()) {
+            throw new IllegalArgumentException("Shard count must be between 0 and " + config.getMaxShards());
+        }
+        jdbcTemplate.queryForList("SELECT id FROM accounts WHERE id = ? FOR NO KEY UPDATE", Long.class, accountId);
+        drainShards(accountId);
+        jdbcTemplate.update("DELETE FROM account_balance_shards WHERE account_id = ? AND shard >= ?", accountId, shards);
+        jdbcTemplate.update("INSERT INTO account_balance_shards (account_id, shard, balance) " +
+                "SELECT ?, shard, 0 FROM generate_series(0, ? - 1) shard ON CONFLICT DO NOTHING", accountId, shards);
+        // Bump the version too, so a concurrent save of a stale Account entity fails instead of overwriting this
+        jdbcTemplate.update("UPDATE accounts SET balance_shards = ?, version = version + 1, " +
+                "updated_at = CURRENT_TIMESTAMP WHERE id = ?", shards, accountId);
+        refresh();
+    }
+
+    // Fold the shards of every hot account back into its row, one account per transaction
+    @Scheduled(fixedDelayString = "${banking.balance-shards.compaction-interval-ms:60000}")
+    public void compactAll() {
+        if (!config.isCompactionEnabled()) {
+            return;
+        }
+        var transactionTemplate = new TransactionTemplate(transactionManager);
+        for (String accountNumber : hotAccounts.keySet()) {
+            transactionTemplate.executeWithoutResult(status -> compact(accountNumber));
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.dto.transaction.BatchTransferResultDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.TransactionStatus;
+import com.hakimmabike.bankingbackend.enums.TransactionType;
+import jakarta.transaction.Transactional;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Applies a list of transfers in one DB transaction. All accounts involved are read and locked with one
+ * query, every transfer is checked against the running balances in memory, and the balance updates and
+ * transfer/transaction inserts are sent as JDBC batches. Each transfer gets its own result, a failed
+ * transfer doesn't stop the others.
+ */
+@Service
+@AllArgsConstructor
+public class BatchTransferService {
+    private static final String COMPLETED = TransactionStatus.COMPLETED.name();
+    private static final String FAILED = TransactionStatus.FAILED.name();
+    // Must match allocationSize of the entities' @SequenceGenerator, see V3__pooled_id_sequences.sql
+    private static final int SEQUENCE_INCREMENT = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionService transactionService;
+    private final BalanceShardService balanceShards;
+    private final UserCounterService userCounters;
+
+    @Transactional
+    public List<BatchTransferResultDto> transfer(List<TransferRequest> requests) {
+        List<BatchTransferResultDto> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        Map<String, AccountRow> accounts = lockAccounts(requests);
+
+        // Check every transfer against the running balances, in request order
+        List<Posting> postings = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            TransferRequest request = requests.get(i);
+            Money amount = request.getAmount() == null ? null : Money.of(request.getAmount());
+            String error = validate(request, amount, accounts);
+            if (error != null) {
+                results.set(i, new BatchTransferResultDto(i, FAILED, null, error));
+                continue;
+            }
+            AccountRow from = accounts.get(request.getFromAccount());
+            AccountRow to = accounts.get(request.getToAccount());
+            from.balance = from.balance.minus(amount);
+            to.balance = to.balance.plus(amount);
+            from.changed = true;
+            to.changed = true;
+            postings.add(new Posting(i, request, amount, from, to, from.balance, to.balance));
+        }
+
+        if (!postings.isEmpty()) {
+            updateBalances(accounts.values());
+            insertTransfers(postings);
+            insertTransactions(postings);
+            // Both rows of a transfer hang off the sender's account
+            for (Posting posting : postings) {
+                userCounters.transactionsPosted(posting.from.userId, 2);
+            }
+        }
+
+        for (Posting posting : postings) {
+            results.set(posting.index, new BatchTransferResultDto(posting.index, COMPLETED, posting.transferId, null));
+        }
+        return results;
+    }
+
+    // Read and lock every account in the batch with one query, in account number order like single transfers
+    private Map<String, AccountRow> lockAccounts(List<TransferRequest> requests) {
+        Set<String> accountNumbers = new HashSet<>();
+        for (TransferRequest request : requests) {
+            if (request.getFromAccount() != null) {
+                accountNumbers.add(request.getFromAccount());
+            }
+            if (request.getToAccount() != null) {
+                accountNumbers.add(request.getToAccount());
+            }
+        }
+        Map<String, AccountRow> accounts = new HashMap<>();
+        if (accountNumbers.isEmpty()) {
+            return accounts;
+        }
+        namedJdbcTemplate.query(
+                "SELECT id, account_number, user_id, balance, status, balance_shards FROM accounts " +
+                        "WHERE account_number IN (:accountNumbers) ORDER BY account_number FOR NO KEY UPDATE",
+                Map.of("accountNumbers", accountNumbers),
+                rs -> {
+                    var row = new AccountRow(rs.getLong("id"), rs.getString("account_number"), rs.getLong("user_id"),
+                            Money.of(rs.getBigDecimal("balance")), AccountStatus.valueOf(rs.getString("status")));
+                    row.sharded = rs.getInt("balance_shards") > 0;
+                    accounts.put(row.accountNumber, row);
+                });
+        // Hot accounts keep part of their money in shards, fold it into the locked rows before checking balances
+        for (AccountRow row : accounts.values()) {
+            if (row.sharded) {
+                row.balance = row.balance.plus(balanceShards.drainShards(row.id));
+            }
+        }
+        return accounts;
+    }
+
+    // Same checks and messages as the single transfer endpoint, returns null when the transfer can go ahead
+    private String validate(TransferRequest request, Money amount, Map<String, AccountRow> accounts) {
+        if (request.getFromAccount() == null || request.getFromAccount().isEmpty()) {
+            return "Source account number can't be empty";
+        }
+        if (request.getToAccount() == null || request.getToAccount().isEmpty()) {
+            return "Destination account number can't be empty";
+        }
+        if (request.getDescription() == null || request.getDescription().isEmpty()) {
+            return "Description can't be empty";
+        }
+        if (amount == null) {
+            return "Amount can't be empty";
+        }
+        if (!amount.isPositive()) {
+            return "Amount must be greater than zero";
+        }
+        if (request.getFromAccount().equals(request.getToAccount())) {
+            return "Source and destination accounts cannot be the same";
+        }
+        AccountRow from = accounts.get(request.getFromAccount());
+        if (from == null) {
+            return "Source account doesn't exist";
+        }
+        AccountRow to = accounts.get(request.getToAccount());
+        if (to == null) {
+            return "Destination account doesn't exist";
+        }
+        if (from.status == AccountStatus.CLOSED) {
+            return "Source account is closed, can't make a transfer";
+        }
+        if (to.status == AccountStatus.CLOSED) {
+            return "Destination account is closed, can't receive a transfer";
+        }
+        if (amount.isGreaterThan(from.balance)) {
+            return "Insufficient funds for transfer";
+        }
+        return null;
+    }
+
+    // One UPDATE per touched account with its final balance
+    private void updateBalances(Collection<AccountRow> accounts) {
+        List<AccountRow> changed = accounts.stream().filter(a -> a.changed).toList();
+        jdbcTemplate.batchUpdate(
+                "UPDATE accounts SET balance = ?, version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id = ?",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        ps.setBigDecimal(1, changed.get(i).balance.toBigDecimal());
+                        ps.setLong(2, changed.get(i).id);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return changed.size();
+                    }
+                });
+    }
+
+    private void insertTransfers(List<Posting> postings) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long[] ids = reserveIds("transfers_seq", postings.size());
+        for (int i = 0; i < postings.size(); i++) {
+            postings.get(i).transferId = ids[i];
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO transfers (id, from_account_id, to_account_id, amount, description, status, transfer_date, created_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Posting posting = postings.get(i);
+                        ps.setLong(1, posting.transferId);
+                        ps.setLong(2, posting.from.id);
+                        ps.setLong(3, posting.to.id);
+                        ps.setBigDecimal(4, posting.amount.toBigDecimal());
+                        ps.setString(5, posting.request.getDescription());
+                        ps.setString(6, COMPLETED);
+                        ps.setTimestamp(7, now);
+                        ps.setTimestamp(8, now);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return postings.size();
+                    }
+                });
+    }
+
+    // Two rows per transfer, the same rows TransactionService writes for a single transfer
+    private void insertTransactions(List<Posting> postings) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long[] ids = reserveIds("transactions_seq", postings.size() * 2);
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO transactions (id, transaction_number, transaction_type, amount, balance_after, description, code, " +
+                        "sender, reciever, account_number, status, transaction_date, created_at, account_id, transfer_id) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    private String transferCode;
+
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Posting posting = postings.get(i / 2);
+                        boolean senderCard = i % 2 == 0;
+                        if (senderCard) {
+                            transferCode = transactionService.generateTransferCode();
+                        }
+                        ps.setLong(1, ids[i]);
+                        ps.setString(2, transactionService.generateTransactionNumber());
+                        ps.setString(3, TransactionType.TRANSFER.name());
+                        ps.setBigDecimal(4, posting.amount.toBigDecimal());
+                        ps.setBigDecimal(5, (senderCard ? posting.fromBalance : posting.toBalance).toBigDecimal());
+                        ps.setString(6, senderCard
+                                ? "Transfer to " + posting.to.accountNumber
+                                : "Transfer from " + posting.to.accountNumber);
+                        ps.setString(7, transferCode);
+                        ps.setBoolean(8, senderCard);
+                        ps.setBoolean(9, !senderCard);
+                        ps.setString(10, senderCard ? posting.from.accountNumber : posting.to.accountNumber);
+                        ps.setString(11, COMPLETED);
+                        ps.setTimestamp(12, now);
+                        ps.setTimestamp(13, now);
+                        ps.setLong(14, posting.from.id);
+                        ps.setLong(15, posting.transferId);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return postings.size() * 2;
+                    }
+                });
+    }
+
+    // Take ids from a pooled sequence the same way Hibernate does: each nextval v reserves the block (v - 49 .. v)
+    private long[] reserveIds(String sequence, int count) {
+        int blocks = (count + SEQUENCE_INCREMENT - 1) / SEQUENCE_INCREMENT;
+        List<Long> highs = jdbcTemplate.queryForList(
+                "SELECT nextval(?::regclass) FROM generate_series(1, ?)", Long.class, sequence, blocks);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = highs.get(i / SEQUENCE_INCREMENT) - SEQUENCE_INCREMENT + 1 + i % SEQUENCE_INCREMENT;
+        }
+        return ids;
+    }
+
+    private static final class AccountRow {
+        private final long id;
+        private final String accountNumber;
+        private final long userId;
+        private final AccountStatus status;
+        private Money balance;
+        private boolean changed;
+        private boolean sharded;
+
+        private AccountRow(long id, String accountNumber, long userId, Money balance, AccountStatus status) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.userId = userId;
+            this.balance = balance;
+            this.status = status;
+        }
+    }
+
+    private static final class Posting {
+        private final int index;
+        private final TransferRequest request;
+        private final Money amount;
+        private final AccountRow from;
+        private final AccountRow to;
+        private final Money fromBalance;
+        private final Money toBalance;
+        private Long transferId;
+
+        private Posting(int index, TransferRequest request, Money amount, AccountRow from, AccountRow to,
+                        Money fromBalance, Money toBalance) {
+            this.index = index;
+            this.request = request;
+            this.amount = amount;
+            this.from = from;
+            this.to = to;
+            this.fromBalance = fromBalance;
+            this.toBalance = toBalance;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.DepositLedgerConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group-commits deposits. Deposits are queued on one {@link AccountLane} whose writer thread commits
+ * everything that arrives within {@code flushIntervalMs} (up to {@code batchSize} deposits) in a single
+ * DB transaction, so many deposits share one commit. A single writer applies deposits in arrival order,
+ * which keeps the order of deposits to the same account. The returned future completes once the deposit
+ * is committed. When the queue stays full for {@code offerTimeoutMs} the deposit is rejected with a
+ * {@link com.hakimmabike.bankingbackend.exception.ServiceBusyException}.
+ */
+@Service
+@RequiredArgsConstructor
+public class DepositLedgerWriter {
+    private final TransactionService transactionService;
+    private final DepositLedgerConfig config;
+    private final PlatformTransactionManager transactionManager;
+
+    private AccountLane lane;
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        lane = new AccountLane("deposit-ledger-writer", config.getQueueCapacity(), config.getBatchSize(),
+                config.getFlushIntervalMs(), config.getOfferTimeoutMs(), new TransactionTemplate(transactionManager));
+        lane.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (lane != null) {
+            lane.stop();
+        }
+    }
+
+    public boolean isEnabled() {
+        return lane != null;
+    }
+
+    public CompletableFuture<TransactionDto> deposit(Long userId, DepositRequest request, ValidationContext context) {
+        return lane.submit(() -> transactionService.deposit(userId, request, context));
+    }
+}
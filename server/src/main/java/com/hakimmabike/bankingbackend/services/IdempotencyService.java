@@ -0,0 +1,259 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.cache.BoundedCache;
+import com.hakimmabike.bankingbackend.config.IdempotencyConfig;
+import com.hakimmabike.bankingbackend.entity.IdempotencyRecord;
+import com.hakimmabike.bankingbackend.enums.IdempotencyStatus;
+import com.hakimmabike.bankingbackend.repository.IdempotencyRecordRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes money-moving endpoints safe to retry. The first request with a given Idempotency-Key runs and its
+ * response is stored; later requests with the same key get the stored response back without running again.
+ *
+ * Lookups go to an in-memory cache first and then to the idempotency_keys table. Duplicates that arrive
+ * while the first request is still running on this instance wait for its result instead of running too;
+ * duplicates on another instance see the claimed row and get a 409. A claim is a lease, so a key whose request
+ * died without finishing is free for a retry once the lease runs out instead of answering 409 for the whole TTL.
+ *
+ * Each key remembers a fingerprint of the request body it was first used with. Reusing the key for a
+ * different request is a client error and gets a 422 instead of the other request's response.
+ *
+ * When the action posts on the calling thread, it runs in a transaction together with storing its response, so
+ * the posting and the completed key commit or roll back as one. A request whose lease was taken over meanwhile
+ * rolls its posting back. When the posting runs on another thread (account lanes, deposit group commit) it
+ * commits on its own and the response is stored in a second transaction. A crash between the two leaves the key
+ * claimed: a retry gets 409 until the lease runs out and then runs the request a second time.
+ */
+@Service
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private final IdempotencyRecordRepository repository;
+    private final IdempotencyConfig idempotencyConfig;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedCache<String, StoredResponse> cache;
+    private final Map<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRecordRepository repository, IdempotencyConfig idempotencyConfig,
+                              ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.idempotencyConfig = idempotencyConfig;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cache = new BoundedCache<>(idempotencyConfig.getCacheSize());
+    }
+
+    // request is the body the action runs with, it is fingerprinted to catch a key reused for another request.
+    // postsOnCallingThread: the action's posting joins a transaction opened here, see the class comment.
+    public ResponseEntity<?> execute(String idempotencyKey, Long userId, String operation, Object request,
+                                     boolean postsOnCallingThread, Supplier<ResponseEntity<?>> action) {
+        // No key, nothing to deduplicate
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = userId + ":" + operation + ":" + idempotencyKey;
+        String requestHash = fingerprint(request);
+        // In memory only identical requests share a response, a different one goes on to the table and is refused
+        String localKey = key + ":" + requestHash;
+
+        StoredResponse cached = cache.get(localKey);
+        if (cached != null) {
+            return replay(cached);
+        }
+
+        // Coalesce duplicates running on this instance: only the first one goes any further
+        var mine = new CompletableFuture<StoredResponse>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(localKey, mine);
+        if (running != null) {
+            return replay(await(running));
+        }
+
+        try {
+            Outcome outcome = executeOnce(key, requestHash, localKey, postsOnCallingThread, action);
+            mine.complete(outcome.stored());
+            return outcome.response();
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(localKey, mine);
+        }
+    }
+
+    private Outcome executeOnce(String key, String requestHash, String localKey, boolean postsOnCallingThread,
+                                Supplier<ResponseEntity<?>> action) {
+        long expiresAtMillis = System.currentTimeMillis() + idempotencyConfig.getTtl().toMillis();
+        // Microseconds like the column, complete() and release() find the claim by this value
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime claimedUntil = now.plus(idempotencyConfig.getClaimTimeout());
+        LocalDateTime expiresAt = now.plus(idempotencyConfig.getTtl());
+
+        if (repository.claim(key, requestHash, claimedUntil, now, expiresAt) == 0) {
+            // Someone already used this key, replay it if it has finished
+            IdempotencyRecord record = repository.findById(key).orElse(null);
+            if (record != null && record.getRequestHash() != null && !record.getRequestHash().equals(requestHash)) {
+                return new Outcome(null, mismatch());
+            }
+            if (record == null || record.getStatus() != IdempotencyStatus.COMPLETED) {
+                return new Outcome(null, inProgress());
+            }
+            StoredResponse stored = new StoredResponse(record.getResponseStatus(),
+                    record.getResponseContentType(), record.getResponseBody());
+            cache.put(localKey, stored, record.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            return new Outcome(stored, replay(stored));
+        }
+        if (postsOnCallingThread) {
+            return executeWithPosting(key, claimedUntil, localKey, expiresAtMillis, action);
+        }
+
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Let a retry run the request again
+            repository.release(key, claimedUntil);
+            throw e;
+        }
+
+        StoredResponse stored = store(response);
+        if (stored.status() >= 500) {
+            repository.release(key, claimedUntil);
+        } else if (repository.complete(key, claimedUntil, stored.status(), stored.contentType(), stored.body()) > 0) {
+            cache.put(localKey, stored, expiresAtMillis);
+        }
+        return new Outcome(stored, response);
+    }
+
+    // Run the action and store its response in one transaction, the action's posting joins it
+    private Outcome executeWithPosting(String key, LocalDateTime claimedUntil, String localKey, long expiresAtMillis,
+                                       Supplier<ResponseEntity<?>> action) {
+        Posted posted;
+        try {
+            posted = transactionTemplate.execute(status -> {
+                ResponseEntity<?> response = action.get();
+                StoredResponse stored = store(response);
+                // A 5xx, or a response after a failure that already doomed the transaction, keeps nothing
+                if (stored.status() >= 500 || status.isRollbackOnly()) {
+                    status.setRollbackOnly();
+                    return new Posted(stored, response, false);
+                }
+                if (repository.complete(key, claimedUntil, stored.status(), stored.contentType(), stored.body()) == 0) {
+                    // The lease ran out and a retry took the key over, the posting is left to it
+                    status.setRollbackOnly();
+                    return new Posted(null, inProgress(), false);
+                }
+                return new Posted(stored, response, true);
+            });
+        } catch (RuntimeException e) {
+            // Rolled back, let a retry run the request again
+            repository.release(key, claimedUntil);
+            throw e;
+        }
+        if (posted.completed()) {
+            cache.put(localKey, posted.stored(), expiresAtMillis);
+        } else if (posted.stored() != null) {
+            repository.release(key, claimedUntil);
+        }
+        return new Outcome(posted.stored(), posted.response());
+    }
+
+    private StoredResponse store(ResponseEntity<?> response) {
+        Object body = response.getBody();
+        if (body == null) {
+            return new StoredResponse(response.getStatusCode().value(), null, null);
+        }
+        if (body instanceof String text) {
+            return new StoredResponse(response.getStatusCode().value(), MediaType.TEXT_PLAIN_VALUE, text);
+        }
+        try {
+            return new StoredResponse(response.getStatusCode().value(), MediaType.APPLICATION_JSON_VALUE,
+                    objectMapper.writeValueAsString(body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize response for idempotency key", e);
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored) {
+        if (stored == null) {
+            return inProgress();
+        }
+        var builder = ResponseEntity.status(stored.status()).header(REPLAYED_HEADER, "true");
+        if (stored.contentType() == null) {
+            return builder.build();
+        }
+        return builder.contentType(MediaType.parseMediaType(stored.contentType())).body(stored.body());
+    }
+
+    private ResponseEntity<?> mismatch() {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body("This Idempotency-Key was already used with a different request");
+    }
+
+    private ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("A request with this Idempotency-Key is still being processed");
+    }
+
+    // SHA-256 of the request as JSON, hex encoded
+    private String fingerprint(Object request) {
+        try {
+            byte[] json = request == null ? new byte[0] : objectMapper.writeValueAsBytes(request);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize request for idempotency key", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // The first request failed, report the same error to the duplicate
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // Purge expired keys from the table and the cache
+    @Scheduled(fixedDelayString = "${banking.idempotency.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        repository.deleteExpired(LocalDateTime.now());
+        cache.purgeExpired();
+    }
+
+    private record StoredResponse(int status, String contentType, String body) {
+    }
+
+    private record Outcome(StoredResponse stored, ResponseEntity<?> response) {
+    }
+
+    private record Posted(StoredResponse stored, ResponseEntity<?> response, boolean completed) {
+    }
+}
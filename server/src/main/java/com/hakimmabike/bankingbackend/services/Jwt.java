@@ -10,16 +10,28 @@ import java.util.Date;
 public class Jwt {
     private final Claims claims;
     private final SecretKey secretKey;
+    // Compact signed form, kept so the token is only signed once
+    private volatile String compact;
 
     public Jwt(Claims claims, SecretKey secretKey) {
         this.claims = claims;
         this.secretKey = secretKey;
     }
 
+    // For a token that was parsed from its compact form
+    public Jwt(Claims claims, SecretKey secretKey, String compact) {
+        this(claims, secretKey);
+        this.compact = compact;
+    }
+
     public boolean isExpired() {
         return claims.getExpiration().before(new Date());
     }
 
+    public Date getExpiration() {
+        return claims.getExpiration();
+    }
+
     public Long getUserId() {
         return Long.valueOf(claims.getSubject());
     }
@@ -29,6 +41,11 @@ public class Jwt {
     }
 
     public String toString() {
-        return Jwts.builder().claims(claims).signWith(secretKey).compact();
+        String token = compact;
+        if (token == null) {
+            token = Jwts.builder().claims(claims).signWith(secretKey).compact();
+            compact = token;
+        }
+        return token;
     }
 }
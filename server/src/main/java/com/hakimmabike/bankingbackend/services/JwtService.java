@@ -1,23 +1,35 @@
 package com.hakimmabike.bankingbackend.services;
 
+import com.hakimmabike.bankingbackend.cache.BoundedCache;
 import com.hakimmabike.bankingbackend.config.JwtConfig;
 import com.hakimmabike.bankingbackend.entity.User;
-import com.hakimmabike.bankingbackend.enums.Role;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
-import lombok.AllArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 
-@AllArgsConstructor
 @Service
 public class JwtService {
     // This service will handle JWT creation and validation
     private final JwtConfig jwtConfig;
+    // Parsers are immutable and thread-safe, so one is built up front
+    private final JwtParser parser;
+    // Tokens whose signature already checked out, keyed by the exact token string and dropped when they expire
+    private final BoundedCache<String, Jwt> verifiedTokens;
+
+    public JwtService(JwtConfig jwtConfig) {
+        this.jwtConfig = jwtConfig;
+        this.parser = Jwts.parser()
+                .verifyWith(jwtConfig.getSecretKey()) // Use the secret key to verify the token
+                .build();
+        this.verifiedTokens = jwtConfig.getVerifiedTokenCacheSize() > 0
+                ? new BoundedCache<>(jwtConfig.getVerifiedTokenCacheSize())
+                : null;
+    }
 
     public Jwt generateAccessToken(User user) {
        // Token expiration time in seconds (5 mins)
@@ -42,12 +54,23 @@ public class JwtService {
     }
 
     public Jwt parseToken(String token) {
+        // A token seen before skips signature verification until it expires
+        if (verifiedTokens != null) {
+            Jwt cached = verifiedTokens.get(token);
+            if (cached != null) {
+                return cached;
+            }
+        }
        try {
            // Parse the JWT token and extract claims
            var claims = getClaims(token);
 
-           // Create a new Jwt object with the claims and secret key
-           return new Jwt(claims, jwtConfig.getSecretKey());
+           // Create a new Jwt object with the claims, secret key and the token it came from
+           var jwt = new Jwt(claims, jwtConfig.getSecretKey(), token);
+           if (verifiedTokens != null && claims.getExpiration() != null) {
+               verifiedTokens.put(token, jwt, claims.getExpiration().getTime());
+           }
+           return jwt;
        }
        catch (JwtException e) {
            // Return false if the token is invalid or an error occurs during parsing
@@ -55,10 +78,15 @@ public class JwtService {
        }
    }
 
+    @Scheduled(fixedDelayString = "${spring.jwt.verified-token-purge-interval-ms:60000}")
+    public void purgeExpiredTokens() {
+        if (verifiedTokens != null) {
+            verifiedTokens.purgeExpired();
+        }
+    }
+
     private Claims getClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(jwtConfig.getSecretKey()) // Use the secret key to verify the token
-                .build()
+        return parser
                 .parseSignedClaims(token) // Parse the signed claims from the token
                 .getPayload(); // Extract the payload (claims)
     }
@@ -0,0 +1,59 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.OptimisticRetryConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a transactional operation and retries it when it loses an optimistic lock race on an
+ * {@link com.hakimmabike.bankingbackend.entity.Account}. Each attempt is a new transaction, so the
+ * operation re-reads the account and re-applies its change. Backoff is exponential with full jitter.
+ *
+ * Metrics (tagged by operation):
+ *  - banking.optimistic.attempts  every attempt made
+ *  - banking.optimistic.conflicts attempts that hit a version conflict
+ *  - banking.optimistic.exhausted operations that gave up after max attempts
+ * The conflict rate is conflicts / attempts.
+ */
+@Component
+@AllArgsConstructor
+public class OptimisticRetryTemplate {
+    private final OptimisticRetryConfig retryConfig;
+    private final MeterRegistry meterRegistry;
+
+    public <T> T execute(String operation, Supplier<T> work) {
+        Counter attempts = meterRegistry.counter("banking.optimistic.attempts", "operation", operation);
+        Counter conflicts = meterRegistry.counter("banking.optimistic.conflicts", "operation", operation);
+
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                return work.get();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                conflicts.increment();
+                if (attempt >= retryConfig.getMaxAttempts()) {
+                    meterRegistry.counter("banking.optimistic.exhausted", "operation", operation).increment();
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long ceiling = Math.min(retryConfig.getMaxBackoffMs(), retryConfig.getBaseBackoffMs() << (attempt - 1));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.PartitionConfig;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks after the monthly partitions of transactions and transfers (see V10). Partitions are created a few
+ * months ahead so rows never land in the default partition, and once detachAfterMonths is set, months older
+ * than that are detached: they stay in the database as plain tables named table_YYYY_MM but history reads,
+ * indexes and vacuum no longer see them.
+ */
+@Service
+public class PartitionMaintenanceService {
+    private static final Set<String> PARTITIONED_TABLES = Set.of("transactions", "transfers");
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionConfig config;
+    private final TransactionTemplate transactionTemplate;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate, PartitionConfig config,
+                                       PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Runs at startup and then every interval
+    @Scheduled(fixedDelayString = "${banking.partitions.maintenance-interval-ms:3600000}")
+    public void maintain() {
+        YearMonth now = YearMonth.now();
+        for (String table : PARTITIONED_TABLES) {
+            createPartitions(table, now, now.plusMonths(config.getMonthsAhead()));
+            if (config.getDetachAfterMonths() > 0) {
+                detachPartitionsBefore(table, now.minusMonths(config.getDetachAfterMonths()));
+            }
+        }
+    }
+
+    // Create the partitions for the months from first to last (inclusive) that don't exist yet
+    public void createPartitions(String table, YearMonth first, YearMonth last) {
+        checkPartitioned(table);
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            jdbcTemplate.queryForObject("SELECT ensure_monthly_partition(?, ?)", String.class,
+                    table, Date.valueOf(month.atDay(1)));
+        }
+    }
+
+    // Detach the monthly partitions of months before cutoff, returns the detached partitions' names
+    public List<String> detachPartitionsBefore(String table, YearMonth cutoff) {
+        List<String> detached = new ArrayList<>();
+        for (String partition : getAttachedPartitions(table)) {
+            YearMonth month = monthOf(table, partition);
+            if (month == null || !month.isBefore(cutoff)) {
+                continue;
+            }
+            // Detaching takes an exclusive lock on the parent table, don't queue every reader behind a long export
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("SET LOCAL lock_timeout = " + config.getLockTimeout().toMillis());
+                jdbcTemplate.execute("ALTER TABLE " + table + " DETACH PARTITION \"" + partition + "\"");
+            });
+            detached.add(partition);
+        }
+        return detached;
+    }
+
+    // Names of the partitions currently attached to table, the default partition included
+    public List<String> getAttachedPartitions(String table) {
+        checkPartitioned(table);
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = CAST(? AS regclass) ORDER BY c.relname",
+                String.class, table);
+    }
+
+    // Month a monthly partition holds, null for partitions that aren't named table_YYYY_MM
+    private static YearMonth monthOf(String table, String partition) {
+        String prefix = table + "_";
+        if (!partition.startsWith(prefix)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(prefix.length()), MONTH_SUFFIX);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Table names end up in DDL, only the partitioned tables are accepted
+    private static void checkPartitioned(String table) {
+        if (!PARTITIONED_TABLES.contains(table)) {
+            throw new IllegalArgumentException("Not a partitioned table: " + table);
+        }
+    }
+}
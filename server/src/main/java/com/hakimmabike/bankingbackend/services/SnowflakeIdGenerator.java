@@ -0,0 +1,88 @@
+package com.hakimmabike.bankingbackend.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique 63-bit ids, laid out Snowflake style:
+ * 41 bits of milliseconds since 2025-01-01 | 10 bits of node id | 12 bits of per-millisecond sequence.
+ *
+ * The last issued (timestamp, sequence) pair lives in one AtomicLong and is advanced with a CAS, so
+ * threads never block each other. If the 4096 ids of a millisecond run out, or the clock goes backwards,
+ * the generator keeps counting from its last timestamp instead of waiting, so ids stay unique and ordered.
+ * Ids are unique across instances as long as each instance has its own banking.node-id.
+ */
+@Component
+public class SnowflakeIdGenerator {
+    private static final long EPOCH = 1735689600000L; // 2025-01-01T00:00:00Z
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final char[] DIGITS = "0123456789".toCharArray();
+    private static final char[] BASE36 = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+    private static final int ID_DIGITS = 19; // Long.MAX_VALUE has 19 decimal digits
+    private static final int CODE_LENGTH = 13; // Long.MAX_VALUE has 13 base-36 digits
+
+    private final long nodeBits;
+    // (timestamp << SEQUENCE_BITS) | sequence of the last issued id
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeIdGenerator(@Value("${banking.node-id}") long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("banking.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = nodeId << SEQUENCE_BITS;
+    }
+
+    public long nextId() {
+        while (true) {
+            long last = lastState.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long now = System.currentTimeMillis() - EPOCH;
+
+            long next;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else if ((last & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = last + 1;
+            } else {
+                // Sequence exhausted for this millisecond, borrow the next one
+                next = (lastTimestamp + 1) << SEQUENCE_BITS;
+            }
+
+            if (lastState.compareAndSet(last, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    // "TXN" followed by the id as 19 zero-padded digits, so numbers sort in the order they were issued
+    public String nextTransactionNumber() {
+        long id = nextId();
+        char[] chars = new char[3 + ID_DIGITS];
+        chars[0] = 'T';
+        chars[1] = 'X';
+        chars[2] = 'N';
+        for (int i = chars.length - 1; i >= 3; i--) {
+            chars[i] = DIGITS[(int) (id % 10)];
+            id /= 10;
+        }
+        return new String(chars);
+    }
+
+    // The id as 13 zero-padded base-36 characters, used to link the two rows of a transfer
+    public String nextCode() {
+        long id = nextId();
+        char[] chars = new char[CODE_LENGTH];
+        for (int i = CODE_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE36[(int) (id % 36)];
+            id /= 36;
+        }
+        return new String(chars);
+    }
+}
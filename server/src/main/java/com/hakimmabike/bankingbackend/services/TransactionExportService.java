@@ -0,0 +1,217 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.archive.ArchivedTransaction;
+import com.hakimmabike.bankingbackend.archive.TransactionArchive;
+import com.hakimmabike.bankingbackend.config.ExportConfig;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Writes a user's full transaction history as CSV or NDJSON while it is read. Rows come from a streamed query
+ * with a JDBC fetch size and each entity is detached once written, so memory stays flat however many
+ * transactions there are. Only a few exports run at a time because each one keeps a connection busy.
+ * Archived transactions are merged in by (transaction_date, id): accounts are archived one at a time, so an
+ * account's archived rows can be newer than another account's rows still in the table. The export reads in
+ * one repeatable read transaction, so the segments it lists and the rows it streams come from the same snapshot
+ * and every transaction is exported once even while another instance moves rows into the archive.
+ */
+@Service
+public class TransactionExportService {
+    private static final String CSV_HEADER =
+            "id,transaction_number,transaction_date,transaction_type,amount,balance_after,category,description,account_number,status";
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionArchive archive;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Semaphore running;
+
+    public TransactionExportService(TransactionRepository transactionRepository, TransactionArchive archive,
+                                    EntityManager entityManager, ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager, ExportConfig config) {
+        this.transactionRepository = transactionRepository;
+        this.archive = archive;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.readOnlyTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.running = new Semaphore(config.getMaxConcurrent());
+    }
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    // Reserve an export slot before the response starts, so a busy server can still answer 503
+    public Slot acquireSlot() {
+        if (!running.tryAcquire()) {
+            throw new ServiceBusyException("Too many exports running, try again shortly");
+        }
+        return new Slot();
+    }
+
+    // A reserved export slot, released once however many times release() is called
+    public final class Slot {
+        private final AtomicBoolean held = new AtomicBoolean(true);
+
+        private Slot() {
+        }
+
+        public void release() {
+            if (held.compareAndSet(true, false)) {
+                running.release();
+            }
+        }
+    }
+
+    // Write the export and give back its slot. accountNumber may be null for all accounts.
+    public void export(Slot slot, Long userId, String accountNumber, Format format, OutputStream out) throws IOException {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            if (format == Format.CSV) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            }
+            readOnlyTransaction.executeWithoutResult(status -> {
+                // The first statement fixes the snapshot the stream below reads from too
+                List<TransactionArchive.SegmentRef> segments = archive.listSegments(userId, accountNumber);
+                try (Stream<Transaction> transactions = streamHot(userId, accountNumber)) {
+                    Iterator<ArchivedTransaction> archived = segments.isEmpty()
+                            ? Collections.emptyIterator()
+                            : archive.snapshot(segments).oldestFirst();
+                    ArchivedTransaction nextArchived = archived.hasNext() ? archived.next() : null;
+                    for (Iterator<Transaction> hot = transactions.iterator(); hot.hasNext(); ) {
+                        Transaction transaction = hot.next();
+                        while (nextArchived != null && isBefore(nextArchived, transaction)) {
+                            write(writer, format, ExportRow.of(nextArchived));
+                            nextArchived = archived.hasNext() ? archived.next() : null;
+                        }
+                        var row = ExportRow.of(transaction);
+                        // Written rows are not needed again, keep the persistence context from growing
+                        entityManager.detach(transaction);
+                        write(writer, format, row);
+                    }
+                    while (nextArchived != null) {
+                        write(writer, format, ExportRow.of(nextArchived));
+                        nextArchived = archived.hasNext() ? archived.next() : null;
+                    }
+                }
+            });
+            writer.flush();
+        } catch (UncheckedIOException e) {
+            // Most likely the client went away, stop reading and report the real cause
+            throw e.getCause();
+        } finally {
+            slot.release();
+        }
+    }
+
+    private static boolean isBefore(ArchivedTransaction archived, Transaction transaction) {
+        int byDate = archived.transactionDate().compareTo(transaction.getTransactionDate());
+        return byDate != 0 ? byDate < 0 : archived.id() < transaction.getId();
+    }
+
+    private Stream<Transaction> streamHot(Long userId, String accountNumber) {
+        return accountNumber == null
+                ? transactionRepository.streamByUserId(userId)
+                : transactionRepository.streamByUserIdAndAccountNumber(userId, accountNumber);
+    }
+
+    private void write(Writer writer, Format format, ExportRow row) {
+        try {
+            if (format == Format.CSV) {
+                writeCsv(writer, row);
+            } else {
+                writer.write(objectMapper.writeValueAsString(row));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeCsv(Writer writer, ExportRow row) throws IOException {
+        writer.write(String.valueOf(row.id()));
+        writer.write(',');
+        writer.write(csv(row.transactionNumber()));
+        writer.write(',');
+        writer.write(String.valueOf(row.transactionDate()));
+        writer.write(',');
+        writer.write(csv(row.transactionType()));
+        writer.write(',');
+        writer.write(row.amount().toPlainString());
+        writer.write(',');
+        writer.write(row.balanceAfter() == null ? "" : row.balanceAfter().toPlainString());
+        writer.write(',');
+        writer.write(csv(row.category()));
+        writer.write(',');
+        writer.write(csv(row.description()));
+        writer.write(',');
+        writer.write(csv(row.accountNumber()));
+        writer.write(',');
+        writer.write(csv(row.status()));
+        writer.write('\n');
+    }
+
+    // Quote a value if it contains a separator, quote or line break
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // One exported transaction, also the NDJSON line layout
+    public record ExportRow(Long id, String transactionNumber, LocalDateTime transactionDate, String transactionType,
+                     BigDecimal amount, BigDecimal balanceAfter, String category, String description,
+                     String accountNumber, String status) {
+        static ExportRow of(Transaction transaction) {
+            return new ExportRow(
+                    transaction.getId(),
+                    transaction.getTransactionNumber(),
+                    transaction.getTransactionDate(),
+                    transaction.getTransactionType(),
+                    transaction.getAmount().toBigDecimal(),
+                    transaction.getBalanceAfterTransaction() == null ? null : transaction.getBalanceAfterTransaction().toBigDecimal(),
+                    transaction.getTransactionCategory() == null ? null : transaction.getTransactionCategory().getName(),
+                    transaction.getDescription(),
+                    transaction.getAccountNumber(),
+                    transaction.getStatus() == null ? null : transaction.getStatus().name());
+        }
+
+        static ExportRow of(ArchivedTransaction transaction) {
+            return new ExportRow(transaction.id(), transaction.transactionNumber(), transaction.transactionDate(),
+                    transaction.transactionType(), transaction.amount(), transaction.balanceAfter(),
+                    transaction.categoryName(), transaction.description(), transaction.accountNumber(),
+                    transaction.status());
+        }
+    }
+}
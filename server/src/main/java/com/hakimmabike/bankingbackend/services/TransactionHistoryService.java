@@ -0,0 +1,203 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.archive.ArchivedTransaction;
+import com.hakimmabike.bankingbackend.archive.TransactionArchive;
+import com.hakimmabike.bankingbackend.cache.TransactionCategoryCache;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionPageDto;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.enums.TransactionType;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Pages through a user's transactions newest first, keyed on (transaction_date, id) instead of an offset.
+ * Each of the user's accounts is read through idx_transactions_account_date_id starting right after the
+ * cursor and stops once it has a page's worth, so a page costs the same however long the history is.
+ * When the user has archived transactions, a page's worth of them after the cursor is merged in by
+ * (transaction_date, id). The same statement lists the user's archive segments, so the page sees each transaction
+ * either in the table or in a segment even while another instance is moving rows into the archive.
+ */
+@Service
+@AllArgsConstructor
+public class TransactionHistoryService {
+    // Transaction rows of the page, then one row per archive segment of the accounts with only segment_file set
+    private static final String PAGE_SQL =
+            "(SELECT t.id, t.transaction_number, t.transaction_type, t.amount, t.balance_after, c.name AS category_name, " +
+                    "t.description, t.code, t.sender, t.reciever, t.account_number, t.transaction_date, " +
+                    "NULL::bigint AS segment_account_id, NULL::varchar AS segment_file " +
+                    "FROM accounts a " +
+                    "CROSS JOIN LATERAL (" +
+                    "SELECT * FROM transactions tx WHERE tx.account_id = a.id%s " +
+                    "ORDER BY tx.transaction_date DESC, tx.id DESC LIMIT :limit) t " +
+                    "LEFT JOIN transaction_categories c ON c.id = t.category_id " +
+                    "WHERE a.user_id = :userId%s " +
+                    "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit) " +
+                    "UNION ALL " +
+                    "(SELECT NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, NULL, s.account_id, s.file_name " +
+                    "FROM archive_segments s JOIN accounts a ON a.id = s.account_id " +
+                    "WHERE a.user_id = :userId%s) " +
+                    "ORDER BY segment_file NULLS FIRST, transaction_date DESC, id DESC";
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionCategoryCache categoryCache;
+    private final TransactionArchive archive;
+
+    // One page of history, filters that are null are not applied. to is inclusive.
+    public TransactionPageDto getPage(Long userId, Cursor cursor, int size, String accountNumber,
+                                      TransactionType type, String categoryName, LocalDate from, LocalDate to) {
+        var params = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("limit", size + 1); // one extra row tells us whether there is another page
+        var transactionFilters = new StringBuilder();
+        var accountFilters = new StringBuilder();
+        // The same filters for rows read from the archive
+        Predicate<ArchivedTransaction> archiveFilter = row -> true;
+
+        if (accountNumber != null) {
+            accountFilters.append(" AND a.account_number = :accountNumber");
+            params.addValue("accountNumber", accountNumber);
+        }
+        if (type != null) {
+            transactionFilters.append(" AND tx.transaction_type = :type");
+            params.addValue("type", type.name());
+            archiveFilter = archiveFilter.and(row -> type.name().equals(row.transactionType()));
+        }
+        if (categoryName != null) {
+            Optional<TransactionCategory> category = categoryCache.find(categoryName);
+            if (category.isEmpty()) {
+                // No such category, so nothing can match
+                return new TransactionPageDto(Collections.emptyList(), null);
+            }
+            transactionFilters.append(" AND tx.category_id = :categoryId");
+            params.addValue("categoryId", category.get().getId());
+            String archivedName = category.get().getName();
+            archiveFilter = archiveFilter.and(row -> archivedName.equals(row.categoryName()));
+        }
+        if (from != null) {
+            LocalDateTime fromTime = from.atStartOfDay();
+            transactionFilters.append(" AND tx.transaction_date >= :from");
+            params.addValue("from", Timestamp.valueOf(fromTime));
+            archiveFilter = archiveFilter.and(row -> !row.transactionDate().isBefore(fromTime));
+        }
+        if (to != null) {
+            LocalDateTime toTime = to.plusDays(1).atStartOfDay();
+            transactionFilters.append(" AND tx.transaction_date < :to");
+            params.addValue("to", Timestamp.valueOf(toTime));
+            archiveFilter = archiveFilter.and(row -> row.transactionDate().isBefore(toTime));
+        }
+        if (cursor != null) {
+            // The plain date bound is implied by the row comparison, it is there so partitions newer than the cursor are pruned
+            transactionFilters.append(" AND tx.transaction_date <= :cursorDate AND (tx.transaction_date, tx.id) < (:cursorDate, :cursorId)");
+            params.addValue("cursorDate", Timestamp.valueOf(cursor.transactionDate()));
+            params.addValue("cursorId", cursor.id());
+        }
+
+        String sql = PAGE_SQL.formatted(transactionFilters, accountFilters, accountFilters);
+        List<PageRow> rows = new ArrayList<>(size + 1);
+        List<TransactionArchive.SegmentRef> segments = new ArrayList<>();
+        namedJdbcTemplate.query(sql, params, rs -> {
+            String segmentFile = rs.getString("segment_file");
+            if (segmentFile != null) {
+                segments.add(new TransactionArchive.SegmentRef(rs.getLong("segment_account_id"), segmentFile));
+                return;
+            }
+            rows.add(new PageRow(new TransactionDto(
+                    rs.getLong("id"),
+                    rs.getString("transaction_number"),
+                    rs.getString("transaction_type"),
+                    rs.getBigDecimal("amount"),
+                    rs.getBigDecimal("balance_after"),
+                    rs.getString("category_name"),
+                    rs.getString("description"),
+                    rs.getString("code"),
+                    rs.getBoolean("sender"),
+                    rs.getBoolean("reciever"),
+                    rs.getString("account_number")),
+                    rs.getTimestamp("transaction_date").toLocalDateTime()));
+        });
+        List<PageRow> page = rows;
+        if (!segments.isEmpty()) {
+            // Accounts are archived one at a time, so one account's archived rows can be newer than another
+            // account's rows still in the table. Read a full page from the archive too and merge the two.
+            List<PageRow> archived = archive.readNewestFirst(segments,
+                            cursor == null ? null : cursor.transactionDate(), cursor == null ? 0 : cursor.id(),
+                            archiveFilter, size + 1).stream()
+                    .map(row -> new PageRow(row.toDto(), row.transactionDate()))
+                    .toList();
+            page = mergeNewestFirst(rows, archived, size + 1);
+        }
+        List<TransactionDto> transactions = new ArrayList<>(page.size());
+        page.forEach(row -> transactions.add(row.transaction()));
+
+        if (transactions.size() <= size) {
+            return new TransactionPageDto(transactions, null);
+        }
+        // Drop the look-ahead row, the next page starts after the last row we return
+        transactions.remove(size);
+        var last = new Cursor(page.get(size - 1).transactionDate(), transactions.get(size - 1).getId());
+        return new TransactionPageDto(transactions, last.encode());
+    }
+
+    // The most recent transactions across all of the user's accounts
+    public List<TransactionDto> getRecent(Long userId, int limit) {
+        return getPage(userId, null, limit, null, null, null, null, null).getTransactions();
+    }
+
+    // A transaction of the page with the date its position in the history is keyed on
+    private record PageRow(TransactionDto transaction, LocalDateTime transactionDate) {
+    }
+
+    // Up to limit rows of two newest-first lists, newest first
+    private static List<PageRow> mergeNewestFirst(List<PageRow> a, List<PageRow> b, int limit) {
+        List<PageRow> merged = new ArrayList<>(limit);
+        int i = 0;
+        int j = 0;
+        while (merged.size() < limit && (i < a.size() || j < b.size())) {
+            if (j == b.size() || (i < a.size() && isNewer(a.get(i), b.get(j)))) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    private static boolean isNewer(PageRow a, PageRow b) {
+        int byDate = a.transactionDate().compareTo(b.transactionDate());
+        return byDate != 0 ? byDate > 0 : a.transaction().getId() > b.transaction().getId();
+    }
+
+    // Position in the history, handed to clients as an opaque string
+    public record Cursor(LocalDateTime transactionDate, long id) {
+        public String encode() {
+            var raw = transactionDate + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Throws IllegalArgumentException if the cursor wasn't produced by encode()
+        public static Cursor decode(String cursor) {
+            try {
+                var raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
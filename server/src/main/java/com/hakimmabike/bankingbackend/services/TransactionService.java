@@ -1,9 +1,13 @@
 package com.hakimmabike.bankingbackend.services;
 
+import com.hakimmabike.bankingbackend.cache.AccountDirectory;
+import com.hakimmabike.bankingbackend.cache.TransactionCategoryCache;
+import com.hakimmabike.bankingbackend.dto.account.AccountBalanceView;
+import com.hakimmabike.bankingbackend.dto.account.AccountDirectoryView;
 import com.hakimmabike.bankingbackend.dto.transaction.*;
 import com.hakimmabike.bankingbackend.dto.transactionCategory.CreateTransactionCategoryRequest;
 import com.hakimmabike.bankingbackend.dto.transactionCategory.TransactionCategoryDto;
-import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
 import com.hakimmabike.bankingbackend.entity.Transaction;
 import com.hakimmabike.bankingbackend.entity.TransactionCategory;
 import com.hakimmabike.bankingbackend.entity.Transfer;
@@ -11,6 +15,7 @@ import com.hakimmabike.bankingbackend.enums.AccountStatus;
 import com.hakimmabike.bankingbackend.enums.CategoryType;
 import com.hakimmabike.bankingbackend.enums.TransactionStatus;
 import com.hakimmabike.bankingbackend.enums.TransactionType;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
 import com.hakimmabike.bankingbackend.exception.InsufficientFundsException;
 import com.hakimmabike.bankingbackend.exception.NoAccountException;
 import com.hakimmabike.bankingbackend.exception.TransferException;
@@ -27,9 +32,12 @@ import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -40,30 +48,45 @@ public class TransactionService {
     private final TransferRepository transferRepository;
     private final TransactionMapper transactionMapper;
     private final TransferMapper transferMapper;
+    private final SnowflakeIdGenerator idGenerator;
+    private final BalanceShardService balanceShards;
+    private final TransactionCategoryCache categoryCache;
+    private final AccountDirectory accountDirectory;
+    private final UserCounterService userCounters;
 
     public String generateTransactionNumber() {
-        long timestamp = System.currentTimeMillis();
-        int random = new Random().nextInt(1000); // 3-digit random number
-        return String.format("TXN%d%03d", timestamp, random);
+        return idGenerator.nextTransactionNumber();
     }
 
-    @Transactional
     public TransactionDto deposit(Long userId, DepositRequest request) {
-        Account account = accountRepository.findByAccountNumberAndUserId(request.getAccountNumber(), userId)
-                .orElseThrow(() -> new EntityNotFoundException("Account not found"));
-
-        // Make a deposit transaction
-        Transaction transaction = new Transaction();
-        transaction.setAccount(account);
-        transaction.setTransactionType(String.valueOf(TransactionType.DEPOSIT));
+        return deposit(userId, request, null);
+    }
 
+    // context: what the controller already loaded for this request, or null to look the category up here
+    @Transactional
+    public TransactionDto deposit(Long userId, DepositRequest request, ValidationContext context) {
         // Make sure the amount is positive
-        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+        Money amount = Money.of(request.getAmount());
+        if (!amount.isPositive()) {
             throw new InsufficientFundsException("Deposit amount must be positive");
-        } else {
-            transaction.setAmount(request.getAmount());
         }
 
+        // Update the account balance in one statement, only if the account belongs to the user and isn't closed
+        if (balanceShards.creditShard(request.getAccountNumber(), userId, amount) == 0
+                && accountRepository.creditOwnedBy(request.getAccountNumber(), userId, amount.toBigDecimal()) == 0) {
+            if (accountDirectory.isOwnedBy(request.getAccountNumber(), userId)) {
+                throw new AccountStatusException("Account is closed, can't make a deposit");
+            }
+            throw new EntityNotFoundException("Account not found");
+        }
+        AccountBalanceView account = accountRepository.findBalanceViewByAccountNumber(request.getAccountNumber())
+                .orElseThrow(() -> new EntityNotFoundException("Account not found"));
+
+        // Make a deposit transaction
+        Transaction transaction = new Transaction();
+        transaction.setAccount(accountRepository.getReferenceById(account.getId()));
+        transaction.setTransactionType(String.valueOf(TransactionType.DEPOSIT));
+        transaction.setAmount(amount);
         transaction.setDescription(request.getDescription());
         transaction.setAccountNumber(account.getAccountNumber());
         transaction.setStatus(TransactionStatus.COMPLETED);
@@ -71,18 +94,14 @@ public class TransactionService {
         transaction.setTransactionNumber(generateTransactionNumber());
 
         if (request.getCategoryName() != null) {
-            transaction.setTransactionCategory(categoryRepository.findByName(request.getCategoryName())
-                    .orElseThrow(() -> new EntityNotFoundException("Transaction category not found")));
+            transaction.setTransactionCategory(categoryFor(request.getCategoryName(), context));
         }
 
-        // Update the account balance
-        BigDecimal newBalance = account.getBalance().add(request.getAmount());
-        account.setBalance(newBalance);
-        transaction.setBalanceAfterTransaction(newBalance.doubleValue());
+        transaction.setBalanceAfterTransaction(balanceOf(account));
 
-        // Save the transaction and account
-        accountRepository.save(account);
+        // Save the transaction
         transactionRepository.save(transaction);
+        userCounters.transactionsPosted(account.getAccountNumber(), 1);
 
         // Convert to DTO
         return transactionMapper.toDto(transaction);
@@ -102,8 +121,9 @@ public class TransactionService {
         category.setCategoryType(CategoryType.valueOf(request.getCategoryType()));
         category.setSystem(Boolean.valueOf(request.getIsSystem()));
 
-        // Save the category
+        // Save the category and reload the in-memory categories so the next request can use it
         TransactionCategory savedCategory = categoryRepository.save(category);
+        categoryCache.refresh();
 
         // Convert to DTO
         return transactionMapper.toCategoryDto(savedCategory);
@@ -111,51 +131,54 @@ public class TransactionService {
 
     // Get Specific Transaction Category
     public TransactionCategoryDto getTransactionCategory(String name) {
-        return categoryRepository.findByName(name)
+        return categoryCache.find(name)
                 .map(transactionMapper::toCategoryDto)
                 .orElseThrow(() -> new EntityNotFoundException("Transaction category not found"));
     }
 
     // Get all transaction categories
     public List<TransactionCategoryDto> getAllTransactionCategories() {
-        List<TransactionCategory> categories = categoryRepository.findAll();
-        return categories.stream()
-                .map(transactionMapper::toCategoryDto)
-                .toList();
+        return categoryCache.findAll();
     }
 
     public TransactionDto withdraw(WithdrawRequest request) {
-        Account account = accountRepository.findByAccountNumber(request.getAccountNumber())
-                .orElseThrow(() -> new EntityNotFoundException("Account not found"));
+        return withdraw(request, null);
+    }
 
-        if (account.getBalance().compareTo(request.getAmount()) < 0) {
-            throw new InsufficientFundsException("Insufficient funds for withdrawal");
+    @Transactional
+    public TransactionDto withdraw(WithdrawRequest request, ValidationContext context) {
+        Money amount = Money.of(request.getAmount());
+        if (!amount.isPositive()) {
+            throw new InsufficientFundsException("Withdrawal amount must be positive");
         }
 
+        // Debit the account in one statement, the funds check is part of the update
+        debitAccount(request.getAccountNumber(), amount,
+                () -> new EntityNotFoundException("Account not found"),
+                "Account is closed, can't make a withdrawal", "Insufficient funds for withdrawal");
+        AccountBalanceView account = accountRepository.findBalanceViewByAccountNumber(request.getAccountNumber())
+                .orElseThrow(() -> new EntityNotFoundException("Account not found"));
+
         // Make a withdrawal transaction
         Transaction transaction = new Transaction();
-        transaction.setAccount(account);
+        transaction.setAccount(accountRepository.getReferenceById(account.getId()));
         transaction.setAccountNumber(account.getAccountNumber());
         transaction.setTransactionType(String.valueOf(TransactionType.WITHDRAWAL));
-        transaction.setAmount(request.getAmount());
+        transaction.setAmount(amount);
         transaction.setDescription(request.getDescription());
         transaction.setStatus(TransactionStatus.COMPLETED);
         transaction.setTransactionDate(LocalDateTime.now());
         transaction.setTransactionNumber(generateTransactionNumber());
 
         if (request.getCategoryName() != null) {
-            transaction.setTransactionCategory(categoryRepository.findByName(request.getCategoryName())
-                    .orElseThrow(() -> new EntityNotFoundException("Transaction category not found")));
+            transaction.setTransactionCategory(categoryFor(request.getCategoryName(), context));
         }
 
-        // Update the account balance
-        BigDecimal newBalance = account.getBalance().subtract(request.getAmount());
-        account.setBalance(newBalance);
-        transaction.setBalanceAfterTransaction(newBalance.doubleValue());
+        transaction.setBalanceAfterTransaction(balanceOf(account));
 
-        // Save the transaction and account
-        accountRepository.save(account);
+        // Save the transaction
         transactionRepository.save(transaction);
+        userCounters.transactionsPosted(account.getAccountNumber(), 1);
 
         // Convert to DTO
         return transactionMapper.toDto(transaction);
@@ -163,7 +186,8 @@ public class TransactionService {
 
     @Transactional
     public TransferDto transfer(TransferRequest request) {
-        if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+        Money amount = Money.of(request.getAmount());
+        if (!amount.isPositive()) {
             throw new InsufficientFundsException("Transfer amount must be positive");
         }
 
@@ -172,121 +196,220 @@ public class TransactionService {
             throw new TransferException("Cannot transfer to the same account");
         }
 
-        Account fromAccount = accountRepository.findByAccountNumber(request.getFromAccount())
-                .orElseThrow(() -> new NoAccountException("Source account not found"));
+        moveFunds(request.getFromAccount(), request.getToAccount(), amount);
 
-        Account toAccount = accountRepository.findByAccountNumber(request.getToAccount())
+        // Both balances after the update in one query
+        Map<String, AccountBalanceView> balances = accountRepository
+                .findBalanceViewsByAccountNumberIn(List.of(request.getFromAccount(), request.getToAccount()))
+                .stream()
+                .collect(Collectors.toMap(AccountBalanceView::getAccountNumber, Function.identity()));
+        AccountBalanceView fromAccount = Optional.ofNullable(balances.get(request.getFromAccount()))
+                .orElseThrow(() -> new NoAccountException("Source account not found"));
+        AccountBalanceView toAccount = Optional.ofNullable(balances.get(request.getToAccount()))
                 .orElseThrow(() -> new NoAccountException("Destination account not found"));
 
         // Create a transfer record
         Transfer transfer = new Transfer();
-        transfer.setSenderAccount(fromAccount);
-        transfer.setReceiverAccount(toAccount);
-        transfer.setAmount(request.getAmount());
+        transfer.setSenderAccount(accountRepository.getReferenceById(fromAccount.getId()));
+        transfer.setReceiverAccount(accountRepository.getReferenceById(toAccount.getId()));
+        transfer.setAmount(amount);
         transfer.setDescription(request.getDescription());
         transfer.setStatus(TransactionStatus.COMPLETED);
         transfer.setTransferDate(LocalDateTime.now());
 
-        // Update balances
-        BigDecimal fromNewBalance = fromAccount.getBalance().subtract(request.getAmount());
-        BigDecimal toNewBalance = toAccount.getBalance().add(request.getAmount());
-
-        fromAccount.setBalance(fromNewBalance);
-        toAccount.setBalance(toNewBalance);
-
-        // Save accounts
-        accountRepository.save(fromAccount);
-        accountRepository.save(toAccount);
-
         // Save transfer
         Transfer savedTransfer = transferRepository.save(transfer);
 
         // Create transactions
-        createTransferTransactions(savedTransfer, fromNewBalance, toNewBalance);
+        createTransferTransactions(savedTransfer, fromAccount.getAccountNumber(), toAccount.getAccountNumber(),
+                balanceOf(fromAccount), balanceOf(toAccount));
 
         // Convert to DTO
         return transferMapper.toDto(savedTransfer, fromAccount.getAccountNumber(), toAccount.getAccountNumber());
     }
 
-    public List<TransactionDto> getAllTransactions(Long userId) {
-        // Get all accounts for the user
-        List<Account> accounts = accountRepository.findByUserId(userId);
+    // Record a transfer to be applied later by AsyncTransferService, no money moves yet
+    @Transactional
+    public TransferStatusDto submitTransfer(TransferRequest request) {
+        Transfer transfer = new Transfer();
+        transfer.setSenderAccount(accountRepository.findByAccountNumber(request.getFromAccount())
+                .orElseThrow(() -> new NoAccountException("Source account not found")));
+        transfer.setReceiverAccount(accountRepository.findByAccountNumber(request.getToAccount())
+                .orElseThrow(() -> new NoAccountException("Destination account not found")));
+        transfer.setAmount(Money.of(request.getAmount()));
+        transfer.setDescription(request.getDescription());
+        transfer.setStatus(TransactionStatus.PENDING);
+        transfer.setTransferDate(LocalDateTime.now());
+        return toStatusDto(transferRepository.save(transfer));
+    }
 
-        if (accounts.isEmpty()) {
-            return Collections.emptyList();
+    // Apply a pending transfer, returns false if it was already applied or failed
+    @Transactional
+    public boolean completePendingTransfer(Long transferId) {
+        // The row lock makes sure a transfer picked up twice (e.g. after a worker's lease ran out) is applied once
+        Transfer transfer = transferRepository.findByIdAndStatusForUpdate(transferId, TransactionStatus.PENDING)
+                .orElse(null);
+        if (transfer == null) {
+            return false;
         }
+        String fromAccountNumber = transfer.getSenderAccount().getAccountNumber();
+        String toAccountNumber = transfer.getReceiverAccount().getAccountNumber();
 
-        // Get all transactions for the user's accounts
-        List<Transaction> transactions = transactionRepository.findByAccountIn(accounts);
-
-        // Check if transactions list is empty
-        if (transactions.isEmpty()) {
-            return Collections.emptyList();
+        // The accounts may have been closed since the transfer was accepted
+        if (transfer.getSenderAccount().getStatus() == AccountStatus.CLOSED) {
+            throw new AccountStatusException("Source account is closed, can't make a transfer");
+        }
+        if (transfer.getReceiverAccount().getStatus() == AccountStatus.CLOSED) {
+            throw new AccountStatusException("Destination account is closed, can't receive a transfer");
         }
-        // Map transactions to DTOs
-        return transactions.stream()
-                .map(transactionMapper::toDto)
-                .toList();
+
+        moveFunds(fromAccountNumber, toAccountNumber, transfer.getAmount());
+
+        AccountBalanceView fromAccount = accountRepository.findBalanceViewByAccountNumber(fromAccountNumber)
+                .orElseThrow(() -> new NoAccountException("Source account not found"));
+        AccountBalanceView toAccount = accountRepository.findBalanceViewByAccountNumber(toAccountNumber)
+                .orElseThrow(() -> new NoAccountException("Destination account not found"));
+
+        transfer.setStatus(TransactionStatus.COMPLETED);
+        createTransferTransactions(transfer, fromAccountNumber, toAccountNumber,
+                balanceOf(fromAccount), balanceOf(toAccount));
+        return true;
+    }
+
+    public TransferStatusDto getTransferStatus(Long userId, Long transferId) {
+        return transferRepository.findStatusViewByIdAndSenderUserId(transferId, userId)
+                .map(view -> new TransferStatusDto(view.id(), view.amount().toBigDecimal(), view.status().name(), view.failureReason()))
+                .orElseThrow(() -> new EntityNotFoundException("Transfer not found"));
+    }
+
+    private TransferStatusDto toStatusDto(Transfer transfer) {
+        return new TransferStatusDto(transfer.getId(), transfer.getAmount().toBigDecimal(), transfer.getStatus().name(),
+                transfer.getFailureReason());
+    }
+
+    // Number of transactions on the user's accounts, read from the maintained counter
+    public long getTransactionCount(Long userId) {
+        return userCounters.getTransactionCount(userId);
     }
 
     public boolean accountExists(String accountNumber) {
-        return accountRepository.existsByAccountNumber(accountNumber);
+        return accountDirectory.exists(accountNumber);
     }
 
     public boolean categoryExists(String categoryName) {
-        return categoryRepository.existsByName(categoryName);
+        return categoryCache.exists(categoryName);
     }
 
     public boolean isAccountClosed(String accountNumber) {
-        Account account = accountRepository.findByAccountNumber(accountNumber)
+        AccountDirectory.Entry account = accountDirectory.find(accountNumber)
                 .orElseThrow(() -> new EntityNotFoundException("Account not found with number: " + accountNumber));
-        return account.getStatus() == AccountStatus.CLOSED;
+        return account.status() == AccountStatus.CLOSED;
     }
 
-    private void createTransferTransactions(Transfer transfer, BigDecimal fromBalance, BigDecimal toBalance) {
-        String transferCode = generateFourCharString();
+    private void createTransferTransactions(Transfer transfer, String fromAccountNumber, String toAccountNumber,
+                                            Money fromBalance, Money toBalance) {
+        String transferCode = generateTransferCode();
 
         Transaction card1 = new Transaction();
         card1.setAccount(transfer.getSenderAccount());
-        card1.setAccountNumber(transfer.getSenderAccount().getAccountNumber());
+        card1.setAccountNumber(fromAccountNumber);
         card1.setTransactionType(String.valueOf(TransactionType.TRANSFER));
         card1.setAmount(transfer.getAmount());
-        card1.setDescription("Transfer to " + transfer.getReceiverAccount().getAccountNumber());
+        card1.setDescription("Transfer to " + toAccountNumber);
         card1.setStatus(TransactionStatus.COMPLETED);
         card1.setCode(transferCode);
         card1.setSender(true);
         card1.setReceiver(false);
         card1.setTransactionDate(LocalDateTime.now());
         card1.setTransactionNumber(generateTransactionNumber());
-        card1.setBalanceAfterTransaction(fromBalance.doubleValue());
+        card1.setBalanceAfterTransaction(fromBalance);
         card1.setTransfer(transfer);
 
         Transaction card2 = new Transaction();
         card2.setAccount(transfer.getSenderAccount());
-        card2.setAccountNumber(transfer.getReceiverAccount().getAccountNumber());
+        card2.setAccountNumber(toAccountNumber);
         card2.setTransactionType(String.valueOf(TransactionType.TRANSFER));
         card2.setAmount(transfer.getAmount());
-        card2.setDescription("Transfer from " + transfer.getReceiverAccount().getAccountNumber());
+        card2.setDescription("Transfer from " + toAccountNumber);
         card2.setStatus(TransactionStatus.COMPLETED);
         card2.setCode(transferCode);
         card2.setReceiver(true);
         card2.setSender(false);
         card2.setTransactionDate(LocalDateTime.now());
         card2.setTransactionNumber(generateTransactionNumber());
-        card2.setBalanceAfterTransaction(toBalance.doubleValue());
+        card2.setBalanceAfterTransaction(toBalance);
         card2.setTransfer(transfer);
 
-        transactionRepository.save(card1);
-        transactionRepository.save(card2);
+        // Both rows go out in one JDBC batch
+        transactionRepository.saveAll(List.of(card1, card2));
+        // Both rows hang off the sender's account
+        userCounters.transactionsPosted(fromAccountNumber, 2);
+    }
+
+    // Update balances, always touching the accounts in account number order so two
+    // opposite transfers can't deadlock on each other's row locks. A credit that goes to a shard comes last
+    // whatever the order, see BalanceShardService for why a shard is never locked before an account row.
+    private void moveFunds(String fromAccountNumber, String toAccountNumber, Money amount) {
+        if (fromAccountNumber.compareTo(toAccountNumber) < 0 || balanceShards.isSharded(toAccountNumber)) {
+            debitAccount(fromAccountNumber, amount,
+                    () -> new NoAccountException("Source account not found"),
+                    "Source account is closed, can't make a transfer", "Insufficient funds for transfer");
+            creditAccount(toAccountNumber, amount);
+        } else {
+            creditAccount(toAccountNumber, amount);
+            debitAccount(fromAccountNumber, amount,
+                    () -> new NoAccountException("Source account not found"),
+                    "Source account is closed, can't make a transfer", "Insufficient funds for transfer");
+        }
+    }
+
+    // Guarded debit: the status and balance checks and the update happen in the same statement
+    private void debitAccount(String accountNumber, Money amount, Supplier<? extends RuntimeException> notFound,
+                              String closedMessage, String insufficientFundsMessage) {
+        BigDecimal debited = amount.toBigDecimal();
+        if (accountRepository.debit(accountNumber, debited) == 0) {
+            // A sharded account may hold the missing money in its shards, fold them in and try once more
+            if (balanceShards.compact(accountNumber) && accountRepository.debit(accountNumber, debited) == 1) {
+                return;
+            }
+            // No row changed: the account doesn't exist, is closed or can't cover the amount. The status is read
+            // from the table, the directory may not have seen the account being closed yet.
+            AccountStatus status = accountRepository.findDirectoryViewByAccountNumber(accountNumber)
+                    .map(AccountDirectoryView::getStatus)
+                    .orElseThrow(notFound);
+            if (status == AccountStatus.CLOSED) {
+                accountDirectory.invalidate(accountNumber);
+                throw new AccountStatusException(closedMessage);
+            }
+            throw new InsufficientFundsException(insufficientFundsMessage);
+        }
     }
 
-    public String generateFourCharString() {
-            String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
-            StringBuilder sb = new StringBuilder(4);
-            Random random = new Random();
-            for (int i = 0; i < 4; i++) {
-                sb.append(chars.charAt(random.nextInt(chars.length())));
+    private void creditAccount(String accountNumber, Money amount) {
+        if (balanceShards.creditShard(accountNumber, null, amount) == 0
+                && accountRepository.credit(accountNumber, amount.toBigDecimal()) == 0) {
+            if (accountDirectory.exists(accountNumber)) {
+                throw new AccountStatusException("Destination account is closed, can't receive a transfer");
             }
-            return sb.toString();
+            throw new NoAccountException("Destination account not found");
+        }
+    }
+
+    // The category found while validating the request, otherwise taken from the category cache
+    private TransactionCategory categoryFor(String name, ValidationContext context) {
+        if (context != null && context.categoryExists()) {
+            return context.getCategory();
         }
+        return categoryCache.find(name)
+                .orElseThrow(() -> new EntityNotFoundException("Transaction category not found"));
+    }
+
+    private Money balanceOf(AccountBalanceView account) {
+        return account.getBalance();
+    }
+
+    // Shared by both rows of a transfer so the client can pair them up
+    public String generateTransferCode() {
+        return idGenerator.nextCode();
+    }
 }
@@ -0,0 +1,95 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.cache.AccountDirectory;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintains the user_counters row of each user. Postings report how many transaction rows they wrote and
+ * the counts are added up per DB transaction, then written just before it commits, in user id order. That
+ * keeps the counters exact (they commit or roll back with the postings), costs one statement per commit
+ * even for a group commit of many deposits, and two commits can't deadlock on each other's counter rows.
+ */
+@Service
+@RequiredArgsConstructor
+public class UserCounterService {
+    private static final String UPSERT_SQL =
+            "INSERT INTO user_counters (user_id, transaction_count, updated_at) VALUES (?, ?, CURRENT_TIMESTAMP) " +
+                    "ON CONFLICT (user_id) DO UPDATE SET " +
+                    "transaction_count = user_counters.transaction_count + EXCLUDED.transaction_count, " +
+                    "updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AccountDirectory accountDirectory;
+
+    // Count transaction rows written for an account, the owner comes from the account directory
+    public void transactionsPosted(String accountNumber, int count) {
+        Long userId = accountDirectory.find(accountNumber)
+                .orElseThrow(() -> new EntityNotFoundException("Account not found"))
+                .userId();
+        transactionsPosted(userId, count);
+    }
+
+    public void transactionsPosted(Long userId, int count) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // Not inside a transaction, nothing to wait for
+            write(Map.of(userId, (long) count));
+            return;
+        }
+        pendingCounts().merge(userId, (long) count, Long::sum);
+    }
+
+    public long getTransactionCount(Long userId) {
+        List<Long> counts = jdbcTemplate.queryForList(
+                "SELECT transaction_count FROM user_counters WHERE user_id = ?", Long.class, userId);
+        // No row yet means the user has never posted a transaction
+        return counts.isEmpty() ? 0 : counts.get(0);
+    }
+
+    // Counts for the current transaction, held by a synchronization that writes them before the commit.
+    // Synchronizations are suspended with their transaction, so a nested new transaction gets its own.
+    private Map<Long, Long> pendingCounts() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingCounts pending && pending.owner == this) {
+                return pending.counts;
+            }
+        }
+        var pending = new PendingCounts(this);
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending.counts;
+    }
+
+    private void write(Map<Long, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        // Sorted by user id, so counter rows are always locked in the same order
+        List<Object[]> rows = new ArrayList<>(counts.size());
+        new TreeMap<>(counts).forEach((userId, count) -> rows.add(new Object[]{userId, count}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+
+    // Not a record: synchronizations live in a hash set and the counts change after registration
+    private static final class PendingCounts implements TransactionSynchronization {
+        private final UserCounterService owner;
+        private final Map<Long, Long> counts = new TreeMap<>();
+
+        private PendingCounts(UserCounterService owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            owner.write(counts);
+        }
+    }
+}
@@ -12,7 +12,6 @@ import com.hakimmabike.bankingbackend.repository.UserAddressRepository;
 import com.hakimmabike.bankingbackend.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.AllArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -20,7 +19,7 @@ import org.springframework.stereotype.Service;
 public class UserService {
     private final UserRepository userRepository;
     private final UserAddressRepository userAddressRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingExecutor passwordHashing;
     private final UserEntityMapper userEntityMapper;
 
     public UserDto registerUser(RegisterUserRequest request) {
@@ -31,7 +30,7 @@ public class UserService {
         // Convert the incoming request DTO to a User entity
         var user = userEntityMapper.toEntity(request);
 
-        user.setPassword(passwordEncoder.encode(user.getPassword())); // Hash the password before saving
+        user.setPassword(passwordHashing.encode(user.getPassword()).join()); // Hash the password before saving, off the shared request pool
         user.setStatus(UserStatus.ACTIVE);// Set the user status to ACTIVE
         user.setRole(Role.valueOf(request.getRole()));
         System.out.println("User saved: " + user);
@@ -0,0 +1,52 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * The accounts and category a deposit, withdrawal or transfer request names, gathered by
+ * {@link ValidationContextLoader} with at most one query. The controller runs its checks against this instead of asking the
+ * database one question at a time, and hands it on to {@link TransactionService} so the category isn't
+ * looked up again.
+ */
+public class ValidationContext {
+    private final Map<String, AccountSnapshot> accounts;
+    private final TransactionCategory category;
+
+    public ValidationContext(Map<String, AccountSnapshot> accounts, TransactionCategory category) {
+        this.accounts = accounts;
+        this.category = category;
+    }
+
+    public boolean accountExists(String accountNumber) {
+        return accountNumber != null && accounts.containsKey(accountNumber);
+    }
+
+    public boolean isAccountClosed(String accountNumber) {
+        AccountSnapshot account = accounts.get(accountNumber);
+        return account != null && account.status() == AccountStatus.CLOSED;
+    }
+
+    // Balance including sub-balances when the request was validated, the guarded update still has the final say.
+    // Null when the context was loaded without balances.
+    public BigDecimal balance(String accountNumber) {
+        AccountSnapshot account = accounts.get(accountNumber);
+        return account == null ? null : account.balance();
+    }
+
+    public boolean categoryExists() {
+        return category != null;
+    }
+
+    // Detached category entity, only used as a reference when saving a transaction
+    public TransactionCategory getCategory() {
+        return category;
+    }
+
+    public record AccountSnapshot(Long id, String accountNumber, Long userId, AccountStatus status,
+                                  BigDecimal balance) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.cache.AccountDirectory;
+import com.hakimmabike.bankingbackend.cache.TransactionCategoryCache;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import lombok.AllArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+@Service
+@AllArgsConstructor
+public class ValidationContextLoader {
+    private static final String LOAD_SQL =
+            "SELECT a.id, a.account_number, a.user_id, a.status, a.account_type, " +
+                    "a.balance + COALESCE((SELECT SUM(s.balance) FROM account_balance_shards s WHERE s.account_id = a.id), 0) AS balance " +
+                    "FROM accounts a WHERE a.account_number IN (:accountNumbers)";
+
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final TransactionCategoryCache categoryCache;
+    private final AccountDirectory accountDirectory;
+
+    // Load the given accounts (nulls are ignored) with their balances in one query, the category with the
+    // given name (may be null) comes from the category cache
+    public ValidationContext load(Collection<String> accountNumbers, String categoryName) {
+        List<String> numbers = accountNumbers.stream().filter(Objects::nonNull).distinct().toList();
+        Map<String, ValidationContext.AccountSnapshot> accounts = new HashMap<>();
+        if (!numbers.isEmpty()) {
+            long stamp = accountDirectory.invalidationStamp();
+            namedJdbcTemplate.query(LOAD_SQL, Map.of("accountNumbers", numbers), rs -> {
+                var account = new ValidationContext.AccountSnapshot(rs.getLong("id"), rs.getString("account_number"),
+                        rs.getLong("user_id"), AccountStatus.valueOf(rs.getString("status")), rs.getBigDecimal("balance"));
+                accounts.put(account.accountNumber(), account);
+                // Fresh from the table, so the directory may as well have it
+                accountDirectory.put(new AccountDirectory.Entry(account.id(), account.accountNumber(), account.userId(),
+                        account.status(), AccountType.valueOf(rs.getString("account_type"))), stamp);
+            });
+        }
+        return new ValidationContext(accounts, categoryCache.find(categoryName).orElse(null));
+    }
+
+    // Same as load() for requests that don't check balances, answered from the account directory
+    public ValidationContext loadWithoutBalances(Collection<String> accountNumbers, String categoryName) {
+        Map<String, ValidationContext.AccountSnapshot> accounts = new HashMap<>();
+        for (String accountNumber : accountNumbers) {
+            accountDirectory.find(accountNumber).ifPresent(entry -> accounts.put(entry.accountNumber(),
+                    new ValidationContext.AccountSnapshot(entry.id(), entry.accountNumber(), entry.userId(),
+                            entry.status(), null)));
+        }
+        return new ValidationContext(accounts, categoryCache.find(categoryName).orElse(null));
+    }
+}
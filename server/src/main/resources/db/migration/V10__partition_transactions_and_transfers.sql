@@ -0,0 +1,103 @@
+-- transactions and transfers become range partitioned by month on their date, so date-bounded reads
+-- (history pages, date range finders) only touch the partitions they need and old months can be
+-- detached as a whole. PartitionMaintenanceService keeps the months ahead created.
+--
+-- Postgres requires the partition key in every unique constraint of a partitioned table:
+--  * the primary keys become (id, date). Ids still come from the pooled sequences, so they stay unique.
+--  * transaction_number is unique together with transaction_date. Numbers are Snowflake ids, so that only
+--    lets a duplicate through if two instances share a node id and issue the same number in the same moment.
+--  * transactions.transfer_id can no longer reference transfers (id), that foreign key is dropped. Transfers
+--    are still deleted with either of their accounts, so a trigger does what its ON DELETE SET NULL did.
+--
+-- The copy runs in this migration's one transaction and holds both tables exclusively until it commits:
+-- reads and writes of transactions and transfers wait for the whole copy. Run it in a maintenance window,
+-- it takes about as long as copying and indexing both tables (minutes per few million rows).
+
+-- Creates the partition of parent holding the month of month_start if it doesn't exist, named parent_YYYY_MM
+CREATE OR REPLACE FUNCTION ensure_monthly_partition(parent TEXT, month_start DATE) RETURNS TEXT
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    first_day      DATE := date_trunc('month', month_start)::date;
+    partition_name TEXT := parent || '_' || to_char(first_day, 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NULL THEN
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                       partition_name, parent, first_day, (first_day + INTERVAL '1 month')::date);
+    END IF;
+    RETURN partition_name;
+END;
+$$;
+
+-- Months from the oldest existing row up to three months ahead
+CREATE OR REPLACE FUNCTION ensure_monthly_partitions(parent TEXT, oldest TIMESTAMP) RETURNS VOID
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    month DATE;
+BEGIN
+    FOR month IN SELECT generate_series(date_trunc('month', LEAST(COALESCE(oldest, now()), now())),
+                                        date_trunc('month', now()) + INTERVAL '3 months',
+                                        INTERVAL '1 month')::date
+        LOOP
+            PERFORM ensure_monthly_partition(parent, month);
+        END LOOP;
+END;
+$$;
+
+-- transfers
+ALTER TABLE transfers RENAME TO transfers_unpartitioned;
+CREATE TABLE transfers (LIKE transfers_unpartitioned INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+    PARTITION BY RANGE (transfer_date);
+SELECT ensure_monthly_partitions('transfers', (SELECT MIN(transfer_date) FROM transfers_unpartitioned));
+-- Catches rows outside the created months, stays empty as long as maintenance runs
+CREATE TABLE transfers_default PARTITION OF transfers DEFAULT;
+INSERT INTO transfers SELECT * FROM transfers_unpartitioned;
+
+-- transactions
+ALTER TABLE transactions RENAME TO transactions_unpartitioned;
+CREATE TABLE transactions (LIKE transactions_unpartitioned INCLUDING DEFAULTS INCLUDING CONSTRAINTS)
+    PARTITION BY RANGE (transaction_date);
+SELECT ensure_monthly_partitions('transactions', (SELECT MIN(transaction_date) FROM transactions_unpartitioned));
+CREATE TABLE transactions_default PARTITION OF transactions DEFAULT;
+INSERT INTO transactions SELECT * FROM transactions_unpartitioned;
+
+-- The old tables go first so their index names are free again. Keys and indexes are built after the
+-- copy, which is faster than maintaining them row by row.
+DROP TABLE transactions_unpartitioned;
+DROP TABLE transfers_unpartitioned;
+
+ALTER TABLE transfers ADD PRIMARY KEY (id, transfer_date);
+ALTER TABLE transfers
+    ADD CONSTRAINT transfers_from_account_id_fkey FOREIGN KEY (from_account_id) REFERENCES accounts (id) ON DELETE CASCADE,
+    ADD CONSTRAINT transfers_to_account_id_fkey FOREIGN KEY (to_account_id) REFERENCES accounts (id) ON DELETE CASCADE;
+CREATE INDEX idx_transfers_pending ON transfers (id) WHERE status = 'PENDING';
+CREATE INDEX idx_transfers_from_to ON transfers (from_account_id, to_account_id);
+CREATE INDEX idx_transfers_to_account_id ON transfers (to_account_id);
+CREATE INDEX idx_transfers_transfer_date ON transfers (transfer_date);
+
+ALTER TABLE transactions ADD PRIMARY KEY (id, transaction_date);
+ALTER TABLE transactions
+    ADD CONSTRAINT transactions_account_id_fkey FOREIGN KEY (account_id) REFERENCES accounts (id) ON DELETE CASCADE,
+    ADD CONSTRAINT transactions_category_id_fkey FOREIGN KEY (category_id) REFERENCES transaction_categories (id) ON DELETE SET NULL;
+ALTER TABLE transactions
+    ADD CONSTRAINT transactions_transaction_number_key UNIQUE (transaction_number, transaction_date);
+CREATE INDEX idx_transactions_account_date_id ON transactions (account_id, transaction_date DESC, id DESC);
+CREATE INDEX idx_transactions_transaction_date ON transactions (transaction_date);
+CREATE INDEX idx_transactions_category_id ON transactions (category_id);
+CREATE INDEX idx_transactions_transfer_id ON transactions (transfer_id) WHERE transfer_id IS NOT NULL;
+
+-- Stands in for the dropped foreign key: a deleted transfer no longer links the legs that pointed at it,
+-- including legs on the other account when the transfer goes with one of its accounts
+CREATE FUNCTION unlink_deleted_transfer() RETURNS TRIGGER
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    UPDATE transactions SET transfer_id = NULL WHERE transfer_id = OLD.id;
+    RETURN OLD;
+END;
+$$;
+
+CREATE TRIGGER transfers_unlink_transactions
+    AFTER DELETE ON transfers
+    FOR EACH ROW EXECUTE FUNCTION unlink_deleted_transfer();
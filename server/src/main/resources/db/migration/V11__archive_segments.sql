@@ -0,0 +1,12 @@
+-- Index of the archive's segment files, shared by every instance. A segment is listed in the same transaction
+-- that deletes its rows from transactions, so a transaction is always in exactly one of the two, and a file
+-- that isn't listed here is not part of the archive yet (or never will be, when its move rolled back).
+CREATE TABLE archive_segments (
+    account_id  BIGINT       NOT NULL REFERENCES accounts (id) ON DELETE CASCADE,
+    file_name   VARCHAR(100) NOT NULL,
+    row_count   INT          NOT NULL,
+    oldest_date TIMESTAMP    NOT NULL,
+    oldest_id   BIGINT       NOT NULL,
+    created_at  TIMESTAMP    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (account_id, file_name)
+);
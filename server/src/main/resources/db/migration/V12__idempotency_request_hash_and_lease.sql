@@ -0,0 +1,7 @@
+-- request_hash fingerprints the request body a key was first used with, a retry with a different body is refused.
+-- claimed_until is the lease of an IN_PROGRESS claim: if the request that holds it dies without completing or
+-- releasing the key, a retry may claim it again once the lease has run out. Rows from before have neither and
+-- behave as matching and expired.
+ALTER TABLE idempotency_keys
+    ADD COLUMN request_hash  VARCHAR(64),
+    ADD COLUMN claimed_until TIMESTAMP;
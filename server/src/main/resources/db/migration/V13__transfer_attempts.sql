@@ -0,0 +1,2 @@
+-- How many times a worker has claimed a pending transfer, it is marked FAILED once this reaches the limit
+ALTER TABLE transfers ADD COLUMN attempts INT NOT NULL DEFAULT 0;
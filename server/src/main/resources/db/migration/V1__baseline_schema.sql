@@ -0,0 +1,78 @@
+-- Baseline schema: the end state of the hand-run scripts under /database, as one migration.
+-- Databases created from those scripts are baselined at version 1 (spring.flyway.baseline-on-migrate),
+-- so this only runs on an empty database. The transactions columns code, sender, reciever and
+-- account_number were added by hand after create_tables.sql and are included here.
+CREATE TABLE users (
+    id SERIAL PRIMARY KEY,
+    email VARCHAR(255) NOT NULL UNIQUE CHECK (email ~* '^[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\.[A-Za-z]{2,}$'),
+    password_hash TEXT NOT NULL,
+    first_name VARCHAR(100) NOT NULL,
+    last_name VARCHAR(100) NOT NULL,
+    phone_number VARCHAR(20),
+    status VARCHAR(50) NOT NULL CHECK (status IN ('ACTIVE', 'INACTIVE', 'SUSPENDED')),
+    role VARCHAR(20) NOT NULL CHECK (role IN ('USER', 'ADMIN')),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE user_addresses (
+    id SERIAL PRIMARY KEY,
+    user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    street_address VARCHAR(255) NOT NULL,
+    city VARCHAR(100) NOT NULL,
+    county VARCHAR(100),
+    post_code VARCHAR(20) NOT NULL,
+    country VARCHAR(100) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE transaction_categories (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    description TEXT,
+    category_type VARCHAR(50) NOT NULL CHECK (category_type IN ('INCOME', 'EXPENSE', 'TRANSFER')),
+    is_system BOOLEAN NOT NULL DEFAULT FALSE,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE accounts (
+    id SERIAL PRIMARY KEY,
+    user_id INTEGER NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    account_number VARCHAR(50) NOT NULL UNIQUE,
+    account_type VARCHAR(50) NOT NULL CHECK (account_type IN ('DEBIT', 'SAVINGS', 'CREDIT')),
+    balance NUMERIC(15, 2) NOT NULL DEFAULT 0.00 CHECK (balance >= 0),
+    status VARCHAR(50) NOT NULL CHECK (status IN ('OPEN', 'CLOSED', 'FROZEN')),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE TABLE transfers (
+    id SERIAL PRIMARY KEY,
+    from_account_id INTEGER NOT NULL REFERENCES accounts(id) ON DELETE CASCADE,
+    to_account_id INTEGER NOT NULL REFERENCES accounts(id) ON DELETE CASCADE,
+    amount NUMERIC(15, 2) NOT NULL CHECK (amount > 0),
+    description TEXT,
+    status VARCHAR(50) NOT NULL CHECK (status IN ('PENDING', 'COMPLETED', 'FAILED')),
+    transfer_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT chk_accounts_different CHECK (from_account_id <> to_account_id)
+);
+
+CREATE TABLE transactions (
+    id SERIAL PRIMARY KEY,
+    account_id INTEGER NOT NULL REFERENCES accounts(id) ON DELETE CASCADE,
+    transaction_number VARCHAR(50) NOT NULL UNIQUE,
+    transaction_type VARCHAR(50) NOT NULL CHECK (transaction_type IN ('DEPOSIT', 'WITHDRAWAL', 'TRANSFER')),
+    amount NUMERIC(15, 2) NOT NULL CHECK (amount > 0),
+    balance_after NUMERIC(15, 2),
+    description TEXT,
+    code VARCHAR(50) NOT NULL DEFAULT 'NULL',
+    sender BOOLEAN NOT NULL DEFAULT FALSE,
+    reciever BOOLEAN NOT NULL DEFAULT FALSE,
+    account_number VARCHAR(50) NOT NULL,
+    category_id INTEGER REFERENCES transaction_categories(id) ON DELETE SET NULL,
+    status VARCHAR(50) NOT NULL CHECK (status IN ('PENDING', 'COMPLETED', 'FAILED')),
+    transaction_date TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    transfer_id INTEGER REFERENCES transfers(id) ON DELETE SET NULL
+);
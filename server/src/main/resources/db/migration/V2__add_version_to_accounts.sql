@@ -0,0 +1,3 @@
+-- Optimistic locking version for Account
+ALTER TABLE accounts
+    ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
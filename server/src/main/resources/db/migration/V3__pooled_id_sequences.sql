@@ -0,0 +1,21 @@
+-- Pooled id sequences so Hibernate can batch inserts (IDENTITY ids disable JDBC insert batching).
+-- Hibernate reserves a block of 50 ids per nextval, so the increment must match allocationSize = 50.
+-- setval puts each sequence at the current max id, the next nextval then hands out the block above it.
+CREATE SEQUENCE IF NOT EXISTS users_seq INCREMENT BY 50;
+SELECT setval('users_seq', GREATEST(COALESCE(MAX(id), 0), 1)) FROM users;
+
+CREATE SEQUENCE IF NOT EXISTS accounts_seq INCREMENT BY 50;
+SELECT setval('accounts_seq', GREATEST(COALESCE(MAX(id), 0), 1)) FROM accounts;
+
+CREATE SEQUENCE IF NOT EXISTS transfers_seq INCREMENT BY 50;
+SELECT setval('transfers_seq', GREATEST(COALESCE(MAX(id), 0), 1)) FROM transfers;
+
+CREATE SEQUENCE IF NOT EXISTS transactions_seq INCREMENT BY 50;
+SELECT setval('transactions_seq', GREATEST(COALESCE(MAX(id), 0), 1)) FROM transactions;
+
+-- Ids now come from the pooled sequences. A plain nextval on them would hand out an id inside a block
+-- Hibernate has already reserved, so drop the old SERIAL defaults rather than point them at the new sequences.
+ALTER TABLE users ALTER COLUMN id DROP DEFAULT;
+ALTER TABLE accounts ALTER COLUMN id DROP DEFAULT;
+ALTER TABLE transfers ALTER COLUMN id DROP DEFAULT;
+ALTER TABLE transactions ALTER COLUMN id DROP DEFAULT;
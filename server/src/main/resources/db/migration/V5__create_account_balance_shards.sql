@@ -0,0 +1,11 @@
+-- Hot accounts keep part of their balance in sub-balance rows so concurrent credits don't all wait on one row.
+-- An account's balance is accounts.balance plus the sum of its shards.
+ALTER TABLE accounts
+    ADD COLUMN balance_shards INT NOT NULL DEFAULT 0;
+
+CREATE TABLE account_balance_shards (
+    account_id BIGINT NOT NULL REFERENCES accounts (id) ON DELETE CASCADE,
+    shard      INT    NOT NULL,
+    balance    NUMERIC(15, 2) NOT NULL DEFAULT 0.00 CHECK (balance >= 0),
+    PRIMARY KEY (account_id, shard)
+);
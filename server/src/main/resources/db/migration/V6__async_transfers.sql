@@ -0,0 +1,7 @@
+-- Asynchronous transfers are stored as PENDING and applied by background workers.
+-- claimed_until is a worker's lease on a pending transfer, once it runs out another worker may pick it up.
+ALTER TABLE transfers
+    ADD COLUMN failure_reason VARCHAR(255),
+    ADD COLUMN claimed_until  TIMESTAMP;
+
+CREATE INDEX idx_transfers_pending ON transfers (id) WHERE status = 'PENDING';
@@ -0,0 +1,7 @@
+-- Keyset pagination of transaction history walks each account's transactions newest first by
+-- (transaction_date, id), so a page is an index range scan that stops after the page size.
+CREATE INDEX IF NOT EXISTS idx_transactions_account_date_id
+    ON transactions (account_id, transaction_date DESC, id DESC);
+
+-- History starts from the user's accounts
+CREATE INDEX IF NOT EXISTS idx_accounts_user_id ON accounts (user_id);
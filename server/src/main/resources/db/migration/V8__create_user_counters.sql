@@ -0,0 +1,15 @@
+-- Per-user dashboard counters, kept up to date in the same DB transaction as every posting so reading
+-- them is a primary key lookup instead of counting the user's whole history.
+CREATE TABLE user_counters
+(
+    user_id           BIGINT    NOT NULL PRIMARY KEY REFERENCES users (id) ON DELETE CASCADE,
+    transaction_count BIGINT    NOT NULL DEFAULT 0 CHECK (transaction_count >= 0),
+    updated_at        TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Start from the history that is already there
+INSERT INTO user_counters (user_id, transaction_count)
+SELECT a.user_id, COUNT(*)
+FROM transactions t
+         JOIN accounts a ON a.id = t.account_id
+GROUP BY a.user_id;
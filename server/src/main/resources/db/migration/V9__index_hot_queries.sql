@@ -0,0 +1,28 @@
+-- Indexes behind the repository finders that had to scan whole tables.
+-- transactions (account_id, ...) and accounts (user_id) are covered by V7, account_number and
+-- transaction_number by their unique constraints, pending transfers by the partial index from V6.
+
+-- findByFromAccount, findByFromAccountAndToAccount, deleting a sender's transfers and the
+-- sender-account join of the transfer status view
+CREATE INDEX IF NOT EXISTS idx_transfers_from_to ON transfers (from_account_id, to_account_id);
+
+-- findByToAccount, and the ON DELETE CASCADE from accounts
+CREATE INDEX IF NOT EXISTS idx_transfers_to_account_id ON transfers (to_account_id);
+
+-- findByTransferDateBetween
+CREATE INDEX IF NOT EXISTS idx_transfers_transfer_date ON transfers (transfer_date);
+
+-- findByTransactionDateBetween
+CREATE INDEX IF NOT EXISTS idx_transactions_transaction_date ON transactions (transaction_date);
+
+-- findByTransactionCategory, and the ON DELETE SET NULL from transaction_categories
+CREATE INDEX IF NOT EXISTS idx_transactions_category_id ON transactions (category_id);
+
+-- Deleting a transfer sets transfer_id to NULL on its legs, without this that is a scan per transfer
+CREATE INDEX IF NOT EXISTS idx_transactions_transfer_id ON transactions (transfer_id) WHERE transfer_id IS NOT NULL;
+
+-- UserAddressRepository.findByUserId
+CREATE INDEX IF NOT EXISTS idx_user_addresses_user_id ON user_addresses (user_id);
+
+-- Categories are looked up by name when a transaction is posted
+CREATE INDEX IF NOT EXISTS idx_transaction_categories_name ON transaction_categories (name);
@@ -0,0 +1,74 @@
+package com.hakimmabike.bankingbackend;
+
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+
+import java.math.BigDecimal;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Users, accounts and categories for tests that run against the database, added to a test's context with
+ * {@code @Import(TestFixtures.class)}. Every email, account number and category name it hands out is unique,
+ * so test classes never collide with each other or with rows an aborted run left behind.
+ */
+public class TestFixtures {
+    private final UserRepository userRepository;
+    private final AccountRepository accountRepository;
+    private final TransactionCategoryRepository categoryRepository;
+
+    public TestFixtures(UserRepository userRepository, AccountRepository accountRepository,
+                        TransactionCategoryRepository categoryRepository) {
+        this.userRepository = userRepository;
+        this.accountRepository = accountRepository;
+        this.categoryRepository = categoryRepository;
+    }
+
+    // 32 hex characters, for anything that has to be unique in the database
+    public static String unique() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    public User createUser(String name) {
+        return userRepository.save(User.builder()
+                .email(name.toLowerCase(Locale.ROOT) + "-" + unique() + "@test.com")
+                .password("password")
+                .firstName(name)
+                .lastName("Test")
+                .phoneNumber("0000000000")
+                .status(UserStatus.ACTIVE)
+                .role(Role.USER)
+                .build());
+    }
+
+    // An open account of the user holding 1000
+    public Account createAccount(User user, AccountType type) {
+        return createAccount(user, type, Money.of(BigDecimal.valueOf(1000)));
+    }
+
+    // An open account of the user holding balance
+    public Account createAccount(User user, AccountType type, Money balance) {
+        Account account = new Account();
+        account.setUser(user);
+        account.setAccountNumber("T" + unique());
+        account.setAccountType(type);
+        account.setStatus(AccountStatus.OPEN);
+        account.setBalance(balance);
+        return accountRepository.save(account);
+    }
+
+    public TransactionCategory createCategory(String name, CategoryType type) {
+        return categoryRepository.save(TransactionCategory.builder()
+                .name(name + " " + unique())
+                .description(name + " test")
+                .categoryType(type)
+                .isSystem(false)
+                .build());
+    }
+}
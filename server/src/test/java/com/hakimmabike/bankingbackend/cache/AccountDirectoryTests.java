@@ -0,0 +1,166 @@
+package com.hakimmabike.bankingbackend.cache;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.config.AccountDirectoryConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.WithdrawRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.exception.AccountStatusException;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import com.hakimmabike.bankingbackend.services.TransactionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class AccountDirectoryTests {
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private AccountDirectory sharedDirectory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private User user;
+    private Account account;
+
+    @BeforeEach
+    void createAccount() {
+        user = fixtures.createUser("Directory");
+        account = fixtures.createAccount(user, AccountType.SAVINGS);
+    }
+
+    @AfterEach
+    void deleteAccount() {
+        sharedDirectory.invalidate(account.getAccountNumber());
+        accountRepository.deleteById(account.getId());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void aLookupIsLoadedOnceAndThenAnsweredFromMemory() {
+        AccountDirectory directory = new AccountDirectory(accountRepository, new AccountDirectoryConfig(), meterRegistry);
+
+        AccountDirectory.Entry loaded = directory.find(account.getAccountNumber()).orElseThrow();
+        AccountDirectory.Entry cached = directory.find(account.getAccountNumber()).orElseThrow();
+
+        assertEquals(account.getId(), loaded.id());
+        assertEquals(user.getId(), loaded.userId());
+        assertEquals(AccountStatus.OPEN, loaded.status());
+        assertSame(loaded, cached);
+        assertEquals(1, meterRegistry.counter("banking.account.directory.misses").count());
+        assertEquals(1, meterRegistry.counter("banking.account.directory.hits").count());
+        assertTrue(directory.isOwnedBy(account.getAccountNumber(), user.getId()));
+    }
+
+    @Test
+    void anUnknownAccountIsNotCached() {
+        AccountDirectory directory = new AccountDirectory(accountRepository, new AccountDirectoryConfig(), meterRegistry);
+
+        assertFalse(directory.exists("NO-SUCH-ACCOUNT"));
+        assertFalse(directory.exists("NO-SUCH-ACCOUNT"));
+
+        assertEquals(2, meterRegistry.counter("banking.account.directory.misses").count());
+        assertEquals(0, meterRegistry.counter("banking.account.directory.hits").count());
+    }
+
+    @Test
+    void anInvalidatedEntryIsReadAgain() {
+        AccountDirectory directory = new AccountDirectory(accountRepository, new AccountDirectoryConfig(), meterRegistry);
+        assertFalse(directory.isClosed(account.getAccountNumber()));
+
+        closeBehindTheDirectorysBack();
+        // Still the cached status until this instance hears about the change
+        assertFalse(directory.isClosed(account.getAccountNumber()));
+        directory.invalidate(account.getAccountNumber());
+
+        assertTrue(directory.isClosed(account.getAccountNumber()));
+        assertEquals(2, meterRegistry.counter("banking.account.directory.misses").count());
+    }
+
+    @Test
+    void aLoadOverlappingAnInvalidationDoesNotCacheTheOldStatus() throws Exception {
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        AccountDirectory directory = new AccountDirectory(pausingAfterLoad(loaded, resume), new AccountDirectoryConfig(),
+                meterRegistry);
+
+        // Reads the open account, then waits before caching it
+        CompletableFuture<Boolean> slowLookup = CompletableFuture.supplyAsync(
+                () -> directory.isClosed(account.getAccountNumber()));
+        assertTrue(loaded.await(10, TimeUnit.SECONDS));
+        closeBehindTheDirectorysBack();
+        directory.invalidate(account.getAccountNumber());
+        resume.countDown();
+
+        assertFalse(slowLookup.get(10, TimeUnit.SECONDS));
+        assertTrue(directory.isClosed(account.getAccountNumber()));
+    }
+
+    @Test
+    void aWithdrawalFromAnAccountClosedBehindTheCacheIsRefusedAsClosed() {
+        assertFalse(sharedDirectory.isClosed(account.getAccountNumber()));
+        closeBehindTheDirectorysBack();
+
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNumber(account.getAccountNumber());
+        request.setAmount(BigDecimal.TEN);
+        request.setDescription("closed");
+        assertThrows(AccountStatusException.class, () -> transactionService.withdraw(request));
+
+        assertEquals(Money.of(BigDecimal.valueOf(1000)),
+                accountRepository.findById(account.getId()).orElseThrow().getBalance());
+        // The refusal also dropped the stale entry
+        assertTrue(sharedDirectory.isClosed(account.getAccountNumber()));
+    }
+
+    // As if another instance had closed the account
+    private void closeBehindTheDirectorysBack() {
+        jdbcTemplate.update("UPDATE accounts SET status = 'CLOSED' WHERE id = ?", account.getId());
+    }
+
+    // The real repository, except that a directory read signals `loaded` and then waits for `resume`
+    private AccountRepository pausingAfterLoad(CountDownLatch loaded, CountDownLatch resume) {
+        return (AccountRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{AccountRepository.class}, (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(accountRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("findDirectoryViewByAccountNumber") && loaded.getCount() > 0) {
+                        loaded.countDown();
+                        assertTrue(resume.await(10, TimeUnit.SECONDS));
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,156 @@
+package com.hakimmabike.bankingbackend.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.controller.TransactionCategoryController;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.enums.CategoryType;
+import com.hakimmabike.bankingbackend.mappers.TransactionMapper;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class TransactionCategoryCacheTests {
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+    @Autowired
+    private TransactionMapper transactionMapper;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private TransactionCategoryCache sharedCache;
+    @Autowired
+    private TransactionCategoryController categoryController;
+
+    private final AtomicInteger existsQueries = new AtomicInteger();
+    private final List<TransactionCategory> created = new ArrayList<>();
+    private TransactionCategoryCache cache;
+
+    @BeforeEach
+    void createCache() {
+        cache = new TransactionCategoryCache(countingExistsQueries(), transactionMapper, objectMapper);
+        cache.refresh();
+    }
+
+    @AfterEach
+    void deleteCategories() {
+        categoryRepository.deleteAll(created);
+        sharedCache.refresh();
+    }
+
+    @Test
+    void aKnownCategoryIsAnsweredFromMemory() {
+        TransactionCategory category = create("Known");
+        cache.refresh();
+
+        assertEquals(category.getId(), cache.find(category.getName()).orElseThrow().getId());
+        assertEquals(category.getId(), cache.find(category.getName()).orElseThrow().getId());
+        assertEquals(0, existsQueries.get());
+    }
+
+    @Test
+    void anUnknownNameIsLookedUpOnceUntilTheNextRefresh() {
+        String name = "Unknown " + TestFixtures.unique();
+
+        assertTrue(cache.find(name).isEmpty());
+        assertTrue(cache.find(name).isEmpty());
+        assertFalse(cache.exists(name));
+        assertEquals(1, existsQueries.get());
+
+        cache.refresh();
+        assertTrue(cache.find(name).isEmpty());
+        assertEquals(2, existsQueries.get());
+    }
+
+    @Test
+    void aCategoryCreatedElsewhereIsFoundOnFirstUse() {
+        // Saved straight to the table, as another instance would
+        TransactionCategory category = create("Elsewhere");
+
+        assertEquals(category.getId(), cache.find(category.getName()).orElseThrow().getId());
+        assertEquals(1, existsQueries.get());
+        // The lookup reloaded the snapshot, so the list has it too
+        assertTrue(cache.findAll().stream().anyMatch(dto -> dto.getName().equals(category.getName())));
+    }
+
+    @Test
+    void aCategoryCreatedElsewhereAfterAMissShowsUpWithTheNextRefresh() {
+        TransactionCategory category = TransactionCategory.builder()
+                .name("Later " + TestFixtures.unique())
+                .description("Later test")
+                .categoryType(CategoryType.EXPENSE)
+                .isSystem(false)
+                .build();
+        assertTrue(cache.find(category.getName()).isEmpty());
+
+        created.add(categoryRepository.save(category));
+        assertTrue(cache.find(category.getName()).isEmpty());
+
+        cache.refresh();
+        assertTrue(cache.find(category.getName()).isPresent());
+    }
+
+    @Test
+    void theListIsSerializedOncePerSnapshot() throws Exception {
+        byte[] json = cache.findAllAsJson();
+        assertSame(json, cache.findAllAsJson());
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsBytes(cache.findAll())), objectMapper.readTree(json));
+
+        TransactionCategory category = create("Listed");
+        cache.refresh();
+
+        byte[] reloaded = cache.findAllAsJson();
+        assertNotSame(json, reloaded);
+        assertTrue(objectMapper.readTree(reloaded).findValuesAsText("name").contains(category.getName()));
+    }
+
+    @Test
+    void theEndpointServesThePreSerializedJson() {
+        sharedCache.refresh();
+
+        ResponseEntity<byte[]> response = categoryController.getAllTransactionCategories();
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(MediaType.APPLICATION_JSON, response.getHeaders().getContentType());
+        assertSame(sharedCache.findAllAsJson(), response.getBody());
+    }
+
+    private TransactionCategory create(String name) {
+        TransactionCategory category = fixtures.createCategory(name, CategoryType.INCOME);
+        created.add(category);
+        return category;
+    }
+
+    // The real repository, counting the existence checks made for names missing from the snapshot
+    private TransactionCategoryRepository countingExistsQueries() {
+        return (TransactionCategoryRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TransactionCategoryRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("existsByName")) {
+                        existsQueries.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(categoryRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
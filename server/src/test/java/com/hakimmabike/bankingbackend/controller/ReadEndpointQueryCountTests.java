@@ -0,0 +1,201 @@
+package com.hakimmabike.bankingbackend.controller;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionPageDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.Transfer;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.repository.*;
+import com.hakimmabike.bankingbackend.services.TransactionService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Read endpoints answer from projections: one statement each and no entities loaded into the persistence context.
+// Repository listings that do return entities fetch their associations through entity graphs in the same statement.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import({TestFixtures.class, TransactionControllerQueryCountTests.StatementRecording.class})
+class ReadEndpointQueryCountTests {
+    private static final int TRANSACTIONS = 60;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private AccountController accountController;
+    @Autowired
+    private TransactionController transactionController;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User user;
+    private Account from;
+    private Account to;
+    private TransactionCategory category;
+    private Long transferId;
+
+    @BeforeEach
+    void createAccounts() {
+        user = fixtures.createUser("Read");
+        from = fixtures.createAccount(user, AccountType.SAVINGS);
+        to = fixtures.createAccount(user, AccountType.DEBIT);
+        category = fixtures.createCategory("Read count", CategoryType.EXPENSE);
+
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            rows.add(Transaction.builder()
+                    .transactionNumber("READ-" + System.nanoTime() + "-" + i)
+                    .transactionType(TransactionType.WITHDRAWAL.name())
+                    .amount(Money.of(BigDecimal.ONE))
+                    .balanceAfterTransaction(Money.of(BigDecimal.valueOf(1000)))
+                    .description("read")
+                    .code("NULL")
+                    .sender(false)
+                    .receiver(false)
+                    .accountNumber(from.getAccountNumber())
+                    .status(TransactionStatus.COMPLETED)
+                    .transactionDate(LocalDateTime.now().minusMinutes(i))
+                    .account(from)
+                    .transactionCategory(category)
+                    .build());
+        }
+        transactionRepository.saveAll(rows);
+
+        TransferRequest transfer = new TransferRequest();
+        transfer.setFromAccount(from.getAccountNumber());
+        transfer.setToAccount(to.getAccountNumber());
+        transfer.setAmount(BigDecimal.ONE);
+        transfer.setDescription("status");
+        transferId = transactionService.submitTransfer(transfer).getId();
+    }
+
+    @AfterEach
+    void deleteAccounts() {
+        for (Account account : List.of(from, to)) {
+            transactionRepository.deleteAllByAccount(account);
+            transferRepository.deleteAllBySenderAccount(account);
+        }
+        accountRepository.deleteAllById(List.of(from.getId(), to.getId()));
+        categoryRepository.delete(category);
+        userRepository.delete(user);
+    }
+
+    @Test
+    void accountListIsOneQuery() {
+        assertReadIsOneQuery(() -> accountController.getAllAccountsByUserId(user.getId()));
+    }
+
+    @Test
+    void balanceIsOneQuery() {
+        assertReadIsOneQuery(() -> accountController.getBalance(user.getId(), from.getId()));
+    }
+
+    @Test
+    void transferStatusIsOneQuery() {
+        assertReadIsOneQuery(() -> transactionController.getTransferStatus(user.getId(), transferId));
+    }
+
+    @Test
+    void historyPageIsOneQuery() {
+        ResponseEntity<?> response = assertReadIsOneQuery(() -> transactionController.getTransactionHistory(
+                user.getId(), null, 50, null, null, null, null, null));
+        TransactionPageDto page = (TransactionPageDto) response.getBody();
+        assertEquals(50, page.getTransactions().size());
+        assertEquals(category.getName(), page.getTransactions().get(0).getCategoryName());
+    }
+
+    @Test
+    void recentTransactionsIsOneQuery() {
+        ResponseEntity<?> response = assertReadIsOneQuery(() -> transactionController.getAllTransactionsByUserId(user.getId(), null));
+        assertTrue(((List<?>) response.getBody()).size() >= TRANSACTIONS);
+    }
+
+    @Test
+    void transferListingFetchesPartiesInOneQuery() {
+        Statistics statistics = clearedStatistics();
+        List<Transfer> transfers = transferRepository.findByFromAccount(from);
+
+        // Reading the parties outside a transaction would fail if they had been left as lazy proxies
+        assertEquals(1, transfers.size());
+        assertEquals(from.getAccountNumber(), transfers.get(0).getSenderAccount().getAccountNumber());
+        assertEquals(to.getAccountNumber(), transfers.get(0).getReceiverAccount().getAccountNumber());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+    }
+
+    @Test
+    void transactionListingFetchesDetailsInOneQuery() {
+        Statistics statistics = clearedStatistics();
+        List<Transaction> transactions = transactionRepository.findByAccount(from);
+
+        // The ledger rows carry the category, the transfer legs (once the transfer is applied) carry the transfer link
+        int categorised = 0;
+        for (Transaction transaction : transactions) {
+            if (transaction.getTransfer() != null) {
+                assertEquals(transferId, transaction.getTransfer().getId());
+                assertEquals(Money.of(BigDecimal.ONE), transaction.getTransfer().getAmount());
+            } else {
+                assertEquals(category.getName(), transaction.getTransactionCategory().getName());
+                categorised++;
+            }
+        }
+        assertEquals(TRANSACTIONS, categorised);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+    }
+
+    private Statistics clearedStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private ResponseEntity<?> assertReadIsOneQuery(Supplier<ResponseEntity<?>> request) {
+        Statistics statistics = clearedStatistics();
+        List<ResponseEntity<?>> responses = new ArrayList<>();
+        List<String> statements = TransactionControllerQueryCountTests.StatementRecording.record(() ->
+                responses.add(request.get()));
+
+        assertEquals(200, responses.get(0).getStatusCode().value());
+        assertEquals(List.of("select"), statements.stream()
+                .map(sql -> sql.trim().split("\\s+")[0].toLowerCase(Locale.ROOT))
+                .toList());
+        // No entities were built, so there was nothing to fetch lazily or dirty check
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+        return responses.get(0);
+    }
+}
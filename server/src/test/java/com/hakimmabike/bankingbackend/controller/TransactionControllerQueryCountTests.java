@@ -0,0 +1,230 @@
+package com.hakimmabike.bankingbackend.controller;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.cache.TransactionCategoryCache;
+import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.WithdrawRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.repository.*;
+import com.hakimmabike.bankingbackend.services.TransactionService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Pins the SQL statements each money-moving endpoint sends, so extra lookups show up as a failing test
+@SpringBootTest
+@Import({TestFixtures.class, TransactionControllerQueryCountTests.StatementRecording.class})
+class TransactionControllerQueryCountTests {
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionController transactionController;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+    @Autowired
+    private TransactionCategoryCache categoryCache;
+    @Autowired
+    private TransactionService transactionService;
+
+    private User user;
+    private Account from;
+    private Account to;
+    private TransactionCategory category;
+
+    @BeforeEach
+    void createAccounts() {
+        user = fixtures.createUser("Query");
+        from = fixtures.createAccount(user, AccountType.SAVINGS);
+        to = fixtures.createAccount(user, AccountType.DEBIT);
+        category = fixtures.createCategory("Query count", CategoryType.INCOME);
+    }
+
+    @AfterEach
+    void deleteAccounts() {
+        for (Account account : List.of(from, to)) {
+            transactionRepository.deleteAllByAccount(account);
+            transferRepository.deleteAllBySenderAccount(account);
+        }
+        accountRepository.deleteAllById(List.of(from.getId(), to.getId()));
+        categoryRepository.delete(category);
+        // The category went straight to the table, keep the cache in step with it
+        categoryCache.refresh();
+        userRepository.delete(user);
+    }
+
+    @Test
+    void depositLoadsOnceBeforeTheUpdate() {
+        DepositRequest request = new DepositRequest();
+        request.setAccountNumber(from.getAccountNumber());
+        request.setAmount(BigDecimal.TEN);
+        request.setDescription("deposit");
+        request.setCategoryName(category.getName());
+
+        List<String> statements = record(() -> transactionController.deposit(user.getId(), null, request));
+
+        // account checks come from the account directory: credit, balance after the credit, user counter, transaction row
+        assertEquals(List.of("update", "select", "insert", "insert"), statements);
+    }
+
+    @Test
+    void withdrawalLoadsOnceBeforeTheUpdate() {
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNumber(from.getAccountNumber());
+        request.setAmount(BigDecimal.TEN);
+        request.setDescription("withdrawal");
+        request.setCategoryName(category.getName());
+
+        List<String> statements = record(() -> transactionController.withdraw(user.getId(), null, request));
+
+        // validation context, guarded debit, balance after the debit, user counter, transaction row
+        assertEquals(List.of("select", "update", "select", "insert", "insert"), statements);
+    }
+
+    @Test
+    void transferLoadsOnceBeforeTheUpdates() {
+        TransferRequest request = new TransferRequest();
+        request.setFromAccount(from.getAccountNumber());
+        request.setToAccount(to.getAccountNumber());
+        request.setAmount(BigDecimal.TEN);
+        request.setDescription("transfer");
+
+        List<String> statements = record(() -> transactionController.transfer(user.getId(), null, request));
+
+        // validation context, debit and credit, both balances, user counter, transfer row, both transaction rows in one batch
+        assertEquals(List.of("select", "update", "update", "select", "insert", "insert", "insert"), statements);
+    }
+
+    @Test
+    void transactionCountFollowsPostings() {
+        DepositRequest deposit = new DepositRequest();
+        deposit.setAccountNumber(from.getAccountNumber());
+        deposit.setAmount(BigDecimal.TEN);
+        deposit.setDescription("deposit");
+        deposit.setCategoryName(category.getName());
+        TransferRequest transfer = new TransferRequest();
+        transfer.setFromAccount(from.getAccountNumber());
+        transfer.setToAccount(to.getAccountNumber());
+        transfer.setAmount(BigDecimal.ONE);
+        transfer.setDescription("transfer");
+
+        assertEquals(201, transactionController.deposit(user.getId(), null, deposit).getStatusCode().value());
+        assertEquals(201, transactionController.transfer(user.getId(), null, transfer).getStatusCode().value());
+
+        // One deposit row and both rows of the transfer
+        assertEquals(3, transactionService.getTransactionCount(user.getId()));
+    }
+
+    // Runs the request twice and returns the statements of the second run, the first one only warms up
+    // id blocks and caches (the category was saved behind the category cache's back). Sequence calls come and go with the pooled id blocks, so they are left out.
+    private static List<String> record(Supplier<ResponseEntity<?>> request) {
+        assertEquals(201, request.get().getStatusCode().value());
+        List<String> statements = StatementRecording.record(() ->
+                assertEquals(201, request.get().getStatusCode().value()));
+        return statements.stream()
+                .filter(sql -> !sql.contains("nextval"))
+                .map(sql -> sql.trim().split("\\s+")[0].toLowerCase(Locale.ROOT))
+                .toList();
+    }
+
+    // Wraps the DataSource so every statement prepared on the recording thread is captured
+    @TestConfiguration
+    static class StatementRecording {
+        private static final ThreadLocal<List<String>> RECORDED = new ThreadLocal<>();
+
+        @Bean
+        static BeanPostProcessor recordingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? wrap(dataSource) : bean;
+                }
+            };
+        }
+
+        static List<String> record(Runnable action) {
+            List<String> statements = new ArrayList<>();
+            RECORDED.set(statements);
+            try {
+                action.run();
+            } finally {
+                RECORDED.remove();
+            }
+            return statements;
+        }
+
+        private static DataSource wrap(DataSource dataSource) {
+            return proxy(DataSource.class, dataSource, (method, args) -> {
+                Object result = invoke(dataSource, method, args);
+                return result instanceof Connection connection ? wrap(connection) : result;
+            });
+        }
+
+        private static Connection wrap(Connection connection) {
+            return proxy(Connection.class, connection, (method, args) -> {
+                List<String> statements = RECORDED.get();
+                if (statements != null && method.getName().startsWith("prepare")) {
+                    statements.add((String) args[0]);
+                } else if (statements != null && method.getName().equals("createStatement")) {
+                    statements.add("statement");
+                }
+                return invoke(connection, method, args);
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, T target, Handler handler) {
+            return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                // Proxies are compared by identity, like the pooled objects they stand in for
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> handler.handle(method, args);
+                };
+            });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private interface Handler {
+            Object handle(Method method, Object[] args) throws Throwable;
+        }
+    }
+}
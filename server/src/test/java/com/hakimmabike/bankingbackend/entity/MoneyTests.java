@@ -0,0 +1,146 @@
+package com.hakimmabike.bankingbackend.entity;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTests {
+    private static final int BENCHMARK_POSTINGS = 1_000_000;
+    private static final int BENCHMARK_ROUNDS = 20;
+
+    private final MoneyConverter converter = new MoneyConverter();
+
+    @Test
+    void decimalsBecomeMinorUnits() {
+        assertEquals(1250, Money.of(new BigDecimal("12.5")).minorUnits());
+        assertEquals(-1, Money.of(new BigDecimal("-0.01")).minorUnits());
+        assertEquals(100_000, Money.of(BigDecimal.valueOf(1000.0)).minorUnits());
+        // Rounded like NUMERIC(15, 2) rounds on insert
+        assertEquals(1, Money.of(new BigDecimal("0.005")).minorUnits());
+        assertEquals(-1, Money.of(new BigDecimal("-0.005")).minorUnits());
+        assertEquals(0, Money.of(new BigDecimal("0.004")).minorUnits());
+        assertNull(Money.ofNullable(null));
+    }
+
+    @Test
+    void convertsBackToTwoDecimalPlaces() {
+        assertEquals(new BigDecimal("12.50"), Money.ofMinor(1250).toBigDecimal());
+        assertEquals(new BigDecimal("0.00"), Money.ZERO.toBigDecimal());
+        assertEquals("-0.07", Money.ofMinor(-7).toString());
+    }
+
+    @Test
+    void converterRoundTripsThroughTheColumn() {
+        Money money = Money.ofMinor(9_999_999_999_999L);
+        assertEquals(new BigDecimal("99999999999.99"), converter.convertToDatabaseColumn(money));
+        assertEquals(money, converter.convertToEntityAttribute(converter.convertToDatabaseColumn(money)));
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test
+    void arithmeticAndComparison() {
+        Money balance = Money.of(new BigDecimal("100.00"));
+        Money amount = Money.of(new BigDecimal("0.10"));
+
+        assertEquals(Money.ofMinor(10_010), balance.plus(amount));
+        assertEquals(Money.ofMinor(9_990), balance.minus(amount));
+        assertEquals(Money.ofMinor(-10), amount.negate());
+        assertTrue(amount.isLessThan(balance));
+        assertTrue(balance.isGreaterThan(amount));
+        assertTrue(amount.minus(balance).isNegative());
+        assertEquals(0, Money.ZERO.signum());
+        assertTrue(balance.compareTo(amount) > 0);
+        // Equal whatever scale the decimal had
+        assertEquals(Money.of(new BigDecimal("5")), Money.of(new BigDecimal("5.000")));
+    }
+
+    @Test
+    void overflowThrowsInsteadOfWrapping() {
+        Money max = Money.ofMinor(Long.MAX_VALUE);
+        Money min = Money.ofMinor(Long.MIN_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, () -> min.minus(Money.ofMinor(1)));
+        assertThrows(ArithmeticException.class, min::negate);
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1e20")));
+    }
+
+    @Test
+    void postingMatchesTheBigDecimalPath() {
+        // The running balance of a random series of postings, once in minor units and once as decimals
+        Money balance = Money.ZERO;
+        BigDecimal expected = BigDecimal.ZERO.setScale(Money.SCALE);
+        for (int i = 0; i < 10_000; i++) {
+            BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(-50_000, 50_000), Money.SCALE);
+            balance = balance.plus(Money.of(amount));
+            expected = expected.add(amount);
+        }
+        assertEquals(expected, balance.toBigDecimal());
+    }
+
+    // Only runs with -Pbenchmark, prints its numbers instead of asserting on them. Sums the same postings as
+    // Money and as BigDecimal and reports the bytes allocated on this thread and the postings per second.
+    @Test
+    @Tag("benchmark")
+    void allocationAndThroughputAgainstBigDecimal() {
+        Money[] money = new Money[BENCHMARK_POSTINGS];
+        BigDecimal[] decimals = new BigDecimal[BENCHMARK_POSTINGS];
+        for (int i = 0; i < BENCHMARK_POSTINGS; i++) {
+            decimals[i] = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(-50_000, 50_000), Money.SCALE);
+            money[i] = Money.of(decimals[i]);
+        }
+        // Warm up both paths before measuring
+        for (int round = 0; round < 5; round++) {
+            sum(money);
+            sum(decimals);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long bytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        Money moneyTotal = Money.ZERO;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            moneyTotal = sum(money);
+        }
+        long moneyNanos = System.nanoTime() - start;
+        long moneyBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+        bytes = threads.getThreadAllocatedBytes(threadId);
+        start = System.nanoTime();
+        BigDecimal decimalTotal = BigDecimal.ZERO;
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            decimalTotal = sum(decimals);
+        }
+        long decimalNanos = System.nanoTime() - start;
+        long decimalBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+
+        assertEquals(decimalTotal, moneyTotal.toBigDecimal());
+        long postings = (long) BENCHMARK_POSTINGS * BENCHMARK_ROUNDS;
+        System.out.printf("Money: %.1f bytes/posting, %.0f postings/sec; BigDecimal: %.1f bytes/posting, %.0f postings/sec%n",
+                (double) moneyBytes / postings, postings / (moneyNanos / 1_000_000_000.0),
+                (double) decimalBytes / postings, postings / (decimalNanos / 1_000_000_000.0));
+    }
+
+    private static Money sum(Money[] amounts) {
+        Money total = Money.ZERO;
+        for (Money amount : amounts) {
+            total = total.plus(amount);
+        }
+        return total;
+    }
+
+    private static BigDecimal sum(BigDecimal[] amounts) {
+        BigDecimal total = BigDecimal.ZERO.setScale(Money.SCALE);
+        for (BigDecimal amount : amounts) {
+            total = total.add(amount);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,121 @@
+package com.hakimmabike.bankingbackend.filters;
+
+import com.hakimmabike.bankingbackend.config.DbAdmissionConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbAdmissionFilterTests {
+    private static final int POOL_SIZE = 3;
+    private static final int REQUESTS = 48;
+
+    @Test
+    void concurrentRequestsNeverExceedThePoolSize() throws InterruptedException {
+        var filter = filter(Duration.ofSeconds(10));
+        var inChain = new AtomicInteger();
+        var maxInChain = new AtomicInteger();
+        FilterChain chain = (request, response) -> {
+            maxInChain.accumulateAndGet(inChain.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inChain.decrementAndGet();
+        };
+
+        Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+        var start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    var response = new MockHttpServletResponse();
+                    filter.doFilter(new MockHttpServletRequest("GET", "/api/transactions/1"), response, chain);
+                    statuses.add(response.getStatus());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ServletException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(REQUESTS, statuses.size());
+        assertTrue(statuses.stream().allMatch(status -> status == 200));
+        assertTrue(maxInChain.get() <= POOL_SIZE);
+    }
+
+    @Test
+    void requestThatWaitsTooLongGets503() throws Exception {
+        var filter = filter(Duration.ofMillis(50));
+        var release = new CountDownLatch(1);
+        var holding = new CountDownLatch(POOL_SIZE);
+        List<Thread> holders = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            Thread holder = new Thread(() -> {
+                try {
+                    filter.doFilter(new MockHttpServletRequest("GET", "/api/accounts/1"), new MockHttpServletResponse(),
+                            (request, response) -> {
+                                holding.countDown();
+                                try {
+                                    release.await();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            });
+                } catch (ServletException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            holder.start();
+            holders.add(holder);
+        }
+        holding.await();
+
+        var response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/accounts/1"), response, (req, res) -> fail("should not be admitted"));
+        assertEquals(503, response.getStatus());
+        assertEquals("1", response.getHeader("Retry-After"));
+
+        // Requests outside the API are never held back
+        var health = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), health, (req, res) -> { });
+        assertEquals(200, health.getStatus());
+
+        release.countDown();
+        for (Thread holder : holders) {
+            holder.join();
+        }
+    }
+
+    private static DbAdmissionFilter filter(Duration maxWait) {
+        var config = new DbAdmissionConfig();
+        config.setMaxWait(maxWait);
+        var dataSource = new HikariDataSource();
+        dataSource.setMaximumPoolSize(POOL_SIZE);
+        return new DbAdmissionFilter(config, dataSource, new SimpleMeterRegistry());
+    }
+}
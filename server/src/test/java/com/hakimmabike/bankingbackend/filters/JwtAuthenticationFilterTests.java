@@ -0,0 +1,113 @@
+package com.hakimmabike.bankingbackend.filters;
+
+import com.hakimmabike.bankingbackend.config.JwtConfig;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.Role;
+import com.hakimmabike.bankingbackend.services.JwtService;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthenticationFilterTests {
+    private static final int WARMUP_REQUESTS = 20_000;
+    private static final int MEASURED_REQUESTS = 100_000;
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cachedTokenAuthenticatesLikeAVerifiedOne() throws ServletException, IOException {
+        var jwtService = new JwtService(jwtConfig(10_000));
+        var filter = new JwtAuthenticationFilter(jwtService);
+        var token = jwtService.generateAccessToken(user(7L)).toString();
+
+        for (int i = 0; i < 2; i++) {
+            SecurityContextHolder.clearContext();
+            filter.doFilter(request(token), new MockHttpServletResponse(), new MockFilterChain());
+            var authentication = SecurityContextHolder.getContext().getAuthentication();
+            assertNotNull(authentication);
+            assertEquals(7L, authentication.getPrincipal());
+            assertEquals("ROLE_USER", authentication.getAuthorities().iterator().next().getAuthority());
+        }
+        // The parsed token keeps its compact form rather than signing again
+        assertEquals(token, jwtService.parseToken(token).toString());
+    }
+
+    @Test
+    void tamperedAndExpiredTokensAreRejected() throws ServletException, IOException {
+        var config = jwtConfig(10_000);
+        var jwtService = new JwtService(config);
+        var filter = new JwtAuthenticationFilter(jwtService);
+        var token = jwtService.generateAccessToken(user(7L)).toString();
+        jwtService.parseToken(token); // cache the genuine token
+
+        var tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        filter.doFilter(request(tampered), new MockHttpServletResponse(), new MockFilterChain());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+
+        config.setAccessTokenExpiration(-1);
+        var expired = jwtService.generateAccessToken(user(8L)).toString();
+        filter.doFilter(request(expired), new MockHttpServletResponse(), new MockFilterChain());
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    // Filter cost per request for a dashboard that resends the same token, with and without the verified-token cache
+    @Test
+    void verifiedTokenCacheCutsFilterCost() throws ServletException, IOException {
+        double uncachedNanos = nanosPerRequest(new JwtService(jwtConfig(0)));
+        double cachedNanos = nanosPerRequest(new JwtService(jwtConfig(10_000)));
+
+        System.out.printf("filter cost per request: full verification %.0f ns, cached %.0f ns%n",
+                uncachedNanos, cachedNanos);
+        assertTrue(cachedNanos < uncachedNanos);
+    }
+
+    private double nanosPerRequest(JwtService jwtService) throws ServletException, IOException {
+        var filter = new JwtAuthenticationFilter(jwtService);
+        var token = jwtService.generateAccessToken(user(7L)).toString();
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            filter.doFilter(request(token), new MockHttpServletResponse(), new MockFilterChain());
+            SecurityContextHolder.clearContext();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            filter.doFilter(request(token), new MockHttpServletResponse(), new MockFilterChain());
+            SecurityContextHolder.clearContext();
+        }
+        return (double) (System.nanoTime() - start) / MEASURED_REQUESTS;
+    }
+
+    private static JwtConfig jwtConfig(int cacheSize) {
+        var config = new JwtConfig();
+        config.setSecret("test-secret-that-is-long-enough-for-hmac-sha-256");
+        config.setAccessTokenExpiration(600);
+        config.setRefreshTokenExpiration(604800);
+        config.setVerifiedTokenCacheSize(cacheSize);
+        return config;
+    }
+
+    private static User user(Long id) {
+        return User.builder()
+                .id(id)
+                .email("user" + id + "@example.com")
+                .firstName("Test")
+                .role(Role.USER)
+                .build();
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        var request = new MockHttpServletRequest("GET", "/api/accounts");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
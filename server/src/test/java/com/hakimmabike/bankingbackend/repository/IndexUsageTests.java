@@ -0,0 +1,127 @@
+package com.hakimmabike.bankingbackend.repository;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationInfo;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Runs against the configured Postgres after Flyway has migrated it. Sequential scans are switched off
+// for each EXPLAIN, so the planner only falls back to one when no index can serve the predicate.
+@SpringBootTest
+class IndexUsageTests {
+    // "Index Scan using x on t", "Index Only Scan using x on t" and "Bitmap Index Scan on x"
+    private static final Pattern INDEX_IN_PLAN =
+            Pattern.compile("Index (?:Only )?Scan(?: Backward)? using (\\S+)|Bitmap Index Scan on (\\S+)");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private Flyway flyway;
+
+    @Test
+    void indexMigrationIsApplied() {
+        assertTrue(Arrays.stream(flyway.info().applied())
+                .map(MigrationInfo::getVersion)
+                .anyMatch(version -> version.getVersion().equals("9")));
+    }
+
+    @Test
+    void transactionsOfAccounts() {
+        // findByAccountIn
+        assertIndexScan("SELECT * FROM transactions WHERE account_id IN (1, 2)", "idx_transactions_account_date_id");
+    }
+
+    @Test
+    void transactionsBetweenDates() {
+        // findByTransactionDateBetween
+        assertIndexScan("SELECT * FROM transactions WHERE transaction_date BETWEEN '2025-01-01' AND '2025-02-01'",
+                "idx_transactions_transaction_date");
+    }
+
+    @Test
+    void transactionsOfCategory() {
+        // findByTransactionCategory
+        assertIndexScan("SELECT * FROM transactions WHERE category_id = 1", "idx_transactions_category_id");
+    }
+
+    @Test
+    void transfersFromAccount() {
+        // findByFromAccount and findByFromAccountAndToAccount
+        assertIndexScan("SELECT * FROM transfers WHERE from_account_id = 1", "idx_transfers_from_to");
+        assertIndexScan("SELECT * FROM transfers WHERE from_account_id = 1 AND to_account_id = 2", "idx_transfers_from_to");
+    }
+
+    @Test
+    void transfersToAccount() {
+        // findByToAccount
+        assertIndexScan("SELECT * FROM transfers WHERE to_account_id = 1", "idx_transfers_to_account_id");
+    }
+
+    @Test
+    void transfersBetweenDates() {
+        // findByTransferDateBetween
+        assertIndexScan("SELECT * FROM transfers WHERE transfer_date BETWEEN '2025-01-01' AND '2025-02-01'",
+                "idx_transfers_transfer_date");
+    }
+
+    @Test
+    void accountsOfUser() {
+        // findByUserId and findByAccountNumberAndUserId
+        assertIndexScan("SELECT * FROM accounts WHERE user_id = 1", "idx_accounts_user_id");
+        assertIndexScan("SELECT * FROM accounts WHERE account_number = 'A1' AND user_id = 1", null);
+    }
+
+    @Test
+    void addressOfUser() {
+        // UserAddressRepository.findByUserId
+        assertIndexScan("SELECT * FROM user_addresses WHERE user_id = 1", "idx_user_addresses_user_id");
+    }
+
+    @Test
+    void categoryByName() {
+        // TransactionCategoryRepository.findByName
+        assertIndexScan("SELECT * FROM transaction_categories WHERE name = 'Groceries'", "idx_transaction_categories_name");
+    }
+
+    // Asserts the plan reads through an index, and through the expected one when a name is given.
+    // Partitioned tables are read through the partitions' own indexes, those count when they are attached to it.
+    private void assertIndexScan(String sql, String indexName) {
+        String plan = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            return jdbcTemplate.queryForList("EXPLAIN " + sql, String.class).stream()
+                    .collect(Collectors.joining("\n"));
+        });
+
+        assertFalse(plan.contains("Seq Scan"), plan);
+        List<String> indexes = INDEX_IN_PLAN.matcher(plan).results()
+                .map(match -> match.group(1) != null ? match.group(1) : match.group(2))
+                .toList();
+        assertFalse(indexes.isEmpty(), plan);
+        if (indexName != null) {
+            for (String index : indexes) {
+                Integer matches = jdbcTemplate.queryForObject(
+                        "SELECT COUNT(*) FROM pg_class i " +
+                                "LEFT JOIN pg_inherits h ON h.inhrelid = i.oid " +
+                                "LEFT JOIN pg_class p ON p.oid = h.inhparent " +
+                                "WHERE i.relname = ? AND (i.relname = ? OR p.relname = ?)",
+                        Integer.class, index, indexName, indexName);
+                assertEquals(1, matches, plan);
+            }
+        }
+    }
+}
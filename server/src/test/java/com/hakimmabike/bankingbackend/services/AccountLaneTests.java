@@ -0,0 +1,252 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.config.DepositLedgerConfig;
+import com.hakimmabike.bankingbackend.config.LaneConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.WithdrawRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.exception.InsufficientFundsException;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.TransferRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class AccountLaneTests {
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS_PER_THREAD = 100;
+    private static final long OPENING_BALANCE = 1000;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+
+    private User user;
+    private final List<Account> accounts = new ArrayList<>();
+
+    @BeforeEach
+    void createAccounts() {
+        user = fixtures.createUser("Lane");
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(fixtures.createAccount(user, AccountType.SAVINGS));
+        }
+    }
+
+    @AfterEach
+    void deleteAccounts() {
+        for (Account account : accounts) {
+            transactionRepository.deleteAllByAccount(account);
+            transferRepository.deleteAllBySenderAccount(account);
+            transferRepository.deleteAllByReceiverAccount(account);
+        }
+        accountRepository.deleteAllById(accounts.stream().map(Account::getId).toList());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void concurrentLaneTrafficKeepsBalancesExact() throws InterruptedException {
+        LaneConfig config = new LaneConfig();
+        config.setEnabled(true);
+        config.setCount(2);
+        AccountLaneExecutor lanes = new AccountLaneExecutor(transactionService, config, transactionManager,
+                new DepositLedgerWriter(transactionService, new DepositLedgerConfig(), transactionManager));
+        lanes.start();
+
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicInteger ledgerRows = new AtomicInteger();
+        AtomicInteger unexpected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        int amount = ThreadLocalRandom.current().nextInt(1, 30);
+                        try {
+                            switch (ThreadLocalRandom.current().nextInt(3)) {
+                                case 0 -> {
+                                    lanes.deposit(user.getId(), deposit(randomAccount(), amount), null);
+                                    deposited.addAndGet(amount);
+                                    ledgerRows.incrementAndGet();
+                                }
+                                case 1 -> {
+                                    lanes.withdraw(withdrawal(randomAccount(), amount), null);
+                                    withdrawn.addAndGet(amount);
+                                    ledgerRows.incrementAndGet();
+                                }
+                                default -> {
+                                    // Two of four accounts per lane, so most transfers cross lanes
+                                    int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+                                    int to = (from + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                                    lanes.transfer(transfer(accounts.get(from), accounts.get(to), amount));
+                                    ledgerRows.addAndGet(2);
+                                }
+                            }
+                        } catch (InsufficientFundsException expected) {
+                            // Rolled back on its own, the rest of its group still commits
+                        } catch (RuntimeException e) {
+                            unexpected.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        } finally {
+            lanes.stop();
+        }
+
+        assertEquals(0, unexpected.get());
+        long total = 0;
+        for (Account account : accountRepository.findAllById(accounts.stream().map(Account::getId).toList())) {
+            assertTrue(account.getBalance().signum() >= 0, "Balance went negative");
+            total += account.getBalance().minorUnits();
+        }
+        long expected = ACCOUNTS * OPENING_BALANCE + deposited.get() - withdrawn.get();
+        assertEquals(Money.of(BigDecimal.valueOf(expected)).minorUnits(), total);
+        assertEquals(ledgerRows.get(), transactionRepository.findByAccountIn(accounts).size());
+    }
+
+    @Test
+    void aFailingTaskIsReplayedAloneAndTheRestOfItsGroupCommits() {
+        Account a = accounts.get(0);
+        Account b = accounts.get(1);
+        // A long linger so everything below is queued before the first group is cut
+        AccountLane lane = new AccountLane("test-lane", 64, 32, 500, 1000, new TransactionTemplate(transactionManager));
+        List<CompletableFuture<?>> deposits = new ArrayList<>();
+        CompletableFuture<?> overdraft;
+        CompletableFuture<?> crossLane;
+        lane.start();
+        try {
+            for (int i = 0; i < 5; i++) {
+                deposits.add(lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1))));
+            }
+            overdraft = lane.submit(() -> transactionService.withdraw(withdrawal(a, 1_000_000)));
+            // Ends the group and is carried over to commit on its own
+            crossLane = lane.submitAlone(() -> transactionService.transfer(transfer(a, b, 5)));
+            for (int i = 0; i < 5; i++) {
+                deposits.add(lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1))));
+            }
+
+            deposits.forEach(CompletableFuture::join);
+            crossLane.join();
+            CompletionException failure = assertThrows(CompletionException.class, overdraft::join);
+            assertInstanceOf(InsufficientFundsException.class, failure.getCause());
+        } finally {
+            lane.stop();
+        }
+
+        assertBalance(a, OPENING_BALANCE + 10 - 5);
+        assertBalance(b, OPENING_BALANCE + 5);
+        // Ten deposits and both rows of the transfer, nothing of the overdraft
+        assertEquals(12, transactionRepository.findByAccountIn(accounts).size());
+    }
+
+    @Test
+    void aStoppedLaneFinishesItsQueueAndRefusesNewWork() {
+        Account a = accounts.get(0);
+        AccountLane lane = new AccountLane("test-lane", 64, 32, 200, 1000, new TransactionTemplate(transactionManager));
+        lane.start();
+        CompletableFuture<?> queued = lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1)));
+        lane.stop();
+
+        assertThrows(ServiceBusyException.class,
+                () -> lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1))));
+        queued.join();
+        assertBalance(a, OPENING_BALANCE + 1);
+    }
+
+    @Test
+    void aFullLaneTurnsCallersAwayAfterTheOfferTimeout() {
+        Account a = accounts.get(0);
+        // Not started yet, so nothing drains the single slot
+        AccountLane lane = new AccountLane("test-lane", 1, 32, 0, 50, new TransactionTemplate(transactionManager));
+        CompletableFuture<?> queued = lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1)));
+
+        assertThrows(ServiceBusyException.class,
+                () -> lane.submit(() -> transactionService.deposit(user.getId(), deposit(a, 1))));
+
+        lane.start();
+        try {
+            queued.join();
+        } finally {
+            lane.stop();
+        }
+        assertBalance(a, OPENING_BALANCE + 1);
+    }
+
+    private Account randomAccount() {
+        return accounts.get(ThreadLocalRandom.current().nextInt(ACCOUNTS));
+    }
+
+    private void assertBalance(Account account, long expected) {
+        assertEquals(Money.of(BigDecimal.valueOf(expected)),
+                accountRepository.findById(account.getId()).orElseThrow().getBalance());
+    }
+
+    private static DepositRequest deposit(Account account, long amount) {
+        DepositRequest request = new DepositRequest();
+        request.setAccountNumber(account.getAccountNumber());
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setDescription("lane");
+        return request;
+    }
+
+    private static WithdrawRequest withdrawal(Account account, long amount) {
+        WithdrawRequest request = new WithdrawRequest();
+        request.setAccountNumber(account.getAccountNumber());
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setDescription("lane");
+        return request;
+    }
+
+    private static TransferRequest transfer(Account from, Account to, long amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromAccount(from.getAccountNumber());
+        request.setToAccount(to.getAccountNumber());
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setDescription("lane");
+        return request;
+    }
+}
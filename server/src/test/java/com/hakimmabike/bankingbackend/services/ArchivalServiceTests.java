@@ -0,0 +1,276 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.archive.ArchivedTransaction;
+import com.hakimmabike.bankingbackend.archive.TransactionArchive;
+import com.hakimmabike.bankingbackend.config.ArchiveConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionPageDto;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Small blocks and segments so a few hundred rows span several of each
+@SpringBootTest(properties = {
+        "banking.archive.directory=target/archive-tests",
+        "banking.archive.block-size=16",
+        "banking.archive.max-rows-per-segment=100"
+})
+@Import(TestFixtures.class)
+class ArchivalServiceTests {
+    private static final int ARCHIVED_PER_ACCOUNT = 150;
+    private static final int HOT_PER_ACCOUNT = 5;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private ArchivalService archivalService;
+    @Autowired
+    private TransactionArchive archive;
+    @Autowired
+    private TransactionHistoryService historyService;
+    @Autowired
+    private TransactionExportService exportService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+    @Autowired
+    private ArchiveConfig archiveConfig;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+    private List<Account> accounts;
+    private TransactionCategory category;
+    private List<Transaction> transactions;
+
+    @BeforeEach
+    void createHistory() {
+        user = fixtures.createUser("Archive");
+        accounts = List.of(fixtures.createAccount(user, AccountType.SAVINGS), fixtures.createAccount(user, AccountType.DEBIT));
+        category = fixtures.createCategory("Archive", CategoryType.EXPENSE);
+
+        // Old rows 200 days back, interleaved across the two accounts, and a few recent ones
+        var old = LocalDateTime.now().minusDays(200).truncatedTo(ChronoUnit.SECONDS);
+        var recent = LocalDateTime.now().minusDays(1).truncatedTo(ChronoUnit.SECONDS);
+        List<Transaction> rows = new ArrayList<>();
+        for (int a = 0; a < accounts.size(); a++) {
+            for (int i = 0; i < ARCHIVED_PER_ACCOUNT; i++) {
+                rows.add(transaction(accounts.get(a), i % 2 == 0 ? TransactionType.DEPOSIT : TransactionType.WITHDRAWAL,
+                        old.plusMinutes(i * 2L + a)));
+            }
+            for (int i = 0; i < HOT_PER_ACCOUNT; i++) {
+                rows.add(transaction(accounts.get(a), TransactionType.DEPOSIT, recent.plusMinutes(i * 2L + a)));
+            }
+        }
+        transactions = transactionRepository.saveAll(rows);
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        for (Account account : accounts) {
+            transactionRepository.deleteAllByAccount(account);
+        }
+        accountRepository.deleteAllById(accounts.stream().map(Account::getId).toList());
+        categoryRepository.delete(category);
+        userRepository.delete(user);
+        FileSystemUtils.deleteRecursively(Path.of("target/archive-tests").toFile());
+    }
+
+    @Test
+    void oldTransactionsMoveOutOfTheTable() {
+        for (Account account : accounts) {
+            // 150 rows take two segments of at most 100
+            assertEquals(ARCHIVED_PER_ACCOUNT, archivalService.archiveOlderThan(account.getId(), LocalDateTime.now().minusDays(90)));
+            assertEquals(HOT_PER_ACCOUNT, transactionRepository.findByAccount(account).size());
+            assertEquals(2, archive.listSegments(user.getId(), account.getAccountNumber()).size());
+            // Nothing left to move
+            assertEquals(0, archivalService.archiveOlderThan(account.getId(), LocalDateTime.now().minusDays(90)));
+        }
+    }
+
+    @Test
+    void historyPagesContinueIntoTheArchive() {
+        archiveAll();
+
+        List<Long> ids = readAllPages(null, null);
+
+        List<Long> expected = newestFirst(transactions).stream().map(Transaction::getId).toList();
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    void archivedRowsAreFilteredLikeTableRows() {
+        archiveAll();
+        Account account = accounts.get(1);
+
+        List<Long> ids = readAllPages(account.getAccountNumber(), TransactionType.WITHDRAWAL);
+
+        List<Long> expected = newestFirst(transactions).stream()
+                .filter(t -> t.getAccount().getId().equals(account.getId()))
+                .filter(t -> t.getTransactionType().equals(TransactionType.WITHDRAWAL.name()))
+                .map(Transaction::getId)
+                .toList();
+        assertEquals(ARCHIVED_PER_ACCOUNT / 2, expected.size());
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    void exportStartsWithTheArchive() throws IOException {
+        archiveAll();
+
+        var out = new ByteArrayOutputStream();
+        exportService.export(exportService.acquireSlot(), user.getId(), null, TransactionExportService.Format.CSV, out);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().skip(1).toList();
+
+        List<Transaction> oldestFirst = newestFirst(transactions);
+        Collections.reverse(oldestFirst);
+        assertEquals(oldestFirst.size(), lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(lines.get(i).startsWith(oldestFirst.get(i).getId() + ","), lines.get(i));
+        }
+        assertTrue(lines.get(0).contains("," + category.getName() + ","));
+    }
+
+    @Test
+    void archivedRowsInterleaveWithAnotherAccountsTableRows() throws IOException {
+        // Only the first account has been archived, as when a run skipped or failed on the second. Its archived
+        // rows fall between the second account's old rows, which are still in the table.
+        archivalService.archiveOlderThan(accounts.get(0).getId(), LocalDateTime.now().minusDays(90));
+
+        List<Long> expected = newestFirst(transactions).stream().map(Transaction::getId).toList();
+        assertEquals(expected, readAllPages(null, null));
+
+        var out = new ByteArrayOutputStream();
+        exportService.export(exportService.acquireSlot(), user.getId(), null, TransactionExportService.Format.CSV, out);
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().skip(1).toList();
+        List<Long> oldestFirst = new ArrayList<>(expected);
+        Collections.reverse(oldestFirst);
+        assertEquals(oldestFirst.size(), lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(lines.get(i).startsWith(oldestFirst.get(i) + ","), lines.get(i));
+        }
+    }
+
+    @Test
+    void segmentsArchivedByAnotherInstanceAreRead() throws IOException {
+        // A second instance with its own node id, moving rows into the same archive directory
+        var otherArchive = new TransactionArchive(archiveConfig, 7, jdbcTemplate);
+        var otherArchival = new ArchivalService(jdbcTemplate, otherArchive, archiveConfig, transactionManager);
+        for (Account account : accounts) {
+            assertEquals(ARCHIVED_PER_ACCOUNT, otherArchival.archiveOlderThan(account.getId(), LocalDateTime.now().minusDays(90)));
+        }
+
+        // This instance never saw the moves but finds the segments through archive_segments
+        assertEquals(newestFirst(transactions).stream().map(Transaction::getId).toList(), readAllPages(null, null));
+        var out = new ByteArrayOutputStream();
+        exportService.export(exportService.acquireSlot(), user.getId(), null, TransactionExportService.Format.CSV, out);
+        assertEquals(transactions.size(), out.toString(StandardCharsets.UTF_8).lines().skip(1).count());
+    }
+
+    @Test
+    void recoveryDeletesOnlyUnlistedSegmentsOfThisInstance() throws IOException {
+        archiveAll();
+        Account account = accounts.get(0);
+        List<ArchivedTransaction> rows = newestFirst(transactions).stream()
+                .filter(t -> t.getAccount().getId().equals(account.getId()))
+                .limit(3)
+                .map(t -> new ArchivedTransaction(t.getId(), t.getTransactionNumber(), t.getTransactionType(),
+                        t.getAmount().toBigDecimal(), null, category.getName(), t.getDescription(), t.getCode(), false, false,
+                        t.getAccountNumber(), t.getStatus().name(), t.getTransactionDate()))
+                .toList();
+        // As if the process died after writing a segment but before its move committed, here and on another node
+        Path unlisted = archive.write(account.getId(), rows);
+        Path otherNodes = new TransactionArchive(archiveConfig, 7, jdbcTemplate).write(account.getId(), rows);
+
+        archivalService.recover();
+
+        assertFalse(Files.exists(unlisted));
+        assertTrue(Files.exists(otherNodes));
+        // The listed segments are untouched and still read back in full
+        assertEquals(2, archive.listSegments(user.getId(), account.getAccountNumber()).size());
+        assertEquals(newestFirst(transactions).stream().map(Transaction::getId).toList(), readAllPages(null, null));
+    }
+
+    // Only this test's accounts, the database may hold other old transactions
+    private void archiveAll() {
+        for (Account account : accounts) {
+            archivalService.archiveOlderThan(account.getId(), LocalDateTime.now().minusDays(90));
+        }
+    }
+
+    private List<Long> readAllPages(String accountNumber, TransactionType type) {
+        List<Long> ids = new ArrayList<>();
+        TransactionHistoryService.Cursor cursor = null;
+        while (true) {
+            TransactionPageDto page = historyService.getPage(user.getId(), cursor, 40, accountNumber, type, null, null, null);
+            page.getTransactions().stream().map(TransactionDto::getId).forEach(ids::add);
+            if (page.getNextCursor() == null) {
+                return ids;
+            }
+            cursor = TransactionHistoryService.Cursor.decode(page.getNextCursor());
+        }
+    }
+
+    private static List<Transaction> newestFirst(List<Transaction> transactions) {
+        List<Transaction> sorted = new ArrayList<>(transactions);
+        sorted.sort(Comparator.comparing(Transaction::getTransactionDate).thenComparing(Transaction::getId).reversed());
+        return sorted;
+    }
+
+    private Transaction transaction(Account account, TransactionType type, LocalDateTime date) {
+        return Transaction.builder()
+                .transactionNumber("ARC-" + System.nanoTime())
+                .transactionType(type.name())
+                .amount(Money.of(BigDecimal.ONE))
+                .balanceAfterTransaction(Money.of(BigDecimal.valueOf(1000)))
+                .description("archived")
+                .code("NULL")
+                .sender(false)
+                .receiver(false)
+                .accountNumber(account.getAccountNumber())
+                .status(TransactionStatus.COMPLETED)
+                .transactionDate(date)
+                .account(account)
+                .transactionCategory(category)
+                .build();
+    }
+}
@@ -0,0 +1,206 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.dto.transaction.BatchTransferResultDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.Transfer;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.AccountStatus;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.TransferRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class BatchTransferServiceTests {
+    // More than one pooled id block, so Hibernate has to fetch a fresh block after the batch reserved its ids
+    private static final int SINGLE_TRANSFERS_AFTER = 60;
+    private static final int BENCHMARK_TRANSFERS = 1000;
+    private static final int BENCHMARK_BATCH_SIZE = 100;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private BatchTransferService batchTransferService;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+
+    private User user;
+    private Account a;
+    private Account b;
+    private Account c;
+    private Account closed;
+
+    @BeforeEach
+    void createAccounts() {
+        user = fixtures.createUser("Batch");
+        a = fixtures.createAccount(user, AccountType.SAVINGS);
+        b = fixtures.createAccount(user, AccountType.DEBIT);
+        c = fixtures.createAccount(user, AccountType.SAVINGS);
+        closed = fixtures.createAccount(user, AccountType.DEBIT);
+        closed.setStatus(AccountStatus.CLOSED);
+        closed = accountRepository.save(closed);
+    }
+
+    @AfterEach
+    void deleteAccounts() {
+        for (Account account : accounts()) {
+            transactionRepository.deleteAllByAccount(account);
+            transferRepository.deleteAllBySenderAccount(account);
+            transferRepository.deleteAllByReceiverAccount(account);
+        }
+        accountRepository.deleteAllById(accounts().stream().map(Account::getId).toList());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void eachTransferIsCheckedAgainstTheRunningBalances() {
+        // Hibernate holds a block of ids from this one when the batch reserves its own
+        transactionService.transfer(transfer(c, a, 1));
+
+        List<BatchTransferResultDto> results = batchTransferService.transfer(List.of(
+                transfer(a, b, 100),
+                transfer(b, c, 2000),
+                transfer(a, closed, 10),
+                transfer(a.getAccountNumber(), "NO-SUCH-ACCOUNT", 10),
+                transfer(c, a, 50),
+                // Exactly what is left on a after the transfers above
+                transfer(a, b, 951)));
+
+        assertEquals(List.of("COMPLETED", "FAILED", "FAILED", "FAILED", "COMPLETED", "COMPLETED"),
+                results.stream().map(BatchTransferResultDto::getStatus).toList());
+        assertEquals("Insufficient funds for transfer", results.get(1).getMessage());
+        assertEquals("Destination account is closed, can't receive a transfer", results.get(2).getMessage());
+        assertEquals("Destination account doesn't exist", results.get(3).getMessage());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals(results.get(i).getStatus().equals("COMPLETED"), results.get(i).getTransferId() != null);
+        }
+
+        assertBalance(a, 0);
+        assertBalance(b, 2051);
+        assertBalance(c, 949);
+        assertBalance(closed, 1000);
+        // Two ledger rows per completed transfer, the single one before the batch included
+        assertEquals(8, transactionRepository.findByAccountIn(accounts()).size());
+    }
+
+    @Test
+    void reservedIdsDoNotCollideWithHibernateIds() {
+        transactionService.transfer(transfer(a, b, 1));
+        List<BatchTransferResultDto> results = batchTransferService.transfer(List.of(
+                transfer(a, b, 1), transfer(b, c, 1), transfer(c, a, 1)));
+        results.forEach(result -> assertEquals("COMPLETED", result.getStatus(), result.getMessage()));
+        for (int i = 0; i < SINGLE_TRANSFERS_AFTER; i++) {
+            transactionService.transfer(transfer(b, c, 1));
+        }
+
+        // transactions is keyed on (id, transaction_date), so a reused id would not be refused by the database
+        List<Long> transactionIds = transactionRepository.findByAccountIn(accounts()).stream()
+                .map(Transaction::getId)
+                .toList();
+        assertEquals((SINGLE_TRANSFERS_AFTER + 4) * 2, transactionIds.size());
+        assertEquals(transactionIds.size(), new HashSet<>(transactionIds).size());
+
+        Set<Long> transferIds = new HashSet<>();
+        int transfers = 0;
+        for (Account account : accounts()) {
+            for (Transfer transfer : transferRepository.findByFromAccount(account)) {
+                transferIds.add(transfer.getId());
+                transfers++;
+            }
+        }
+        assertEquals(SINGLE_TRANSFERS_AFTER + 4, transfers);
+        assertEquals(transfers, transferIds.size());
+        results.forEach(result -> assertTrue(transferIds.contains(result.getTransferId())));
+    }
+
+    // Only runs with -Pbenchmark, prints its numbers instead of asserting on timing
+    @Test
+    @Tag("benchmark")
+    void batchAgainstSingleTransfers() {
+        for (Account account : List.of(a, b, c)) {
+            account.setBalance(Money.of(BigDecimal.valueOf(1_000_000)));
+        }
+        a = accountRepository.save(a);
+        b = accountRepository.save(b);
+        c = accountRepository.save(c);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_TRANSFERS; i += BENCHMARK_BATCH_SIZE) {
+            List<TransferRequest> batch = new ArrayList<>(BENCHMARK_BATCH_SIZE);
+            for (int j = 0; j < BENCHMARK_BATCH_SIZE; j++) {
+                batch.add(randomTransfer());
+            }
+            batchTransferService.transfer(batch);
+        }
+        double batchPerSecond = BENCHMARK_TRANSFERS / ((System.nanoTime() - start) / 1_000_000_000.0);
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_TRANSFERS; i++) {
+            transactionService.transfer(randomTransfer());
+        }
+        double singlePerSecond = BENCHMARK_TRANSFERS / ((System.nanoTime() - start) / 1_000_000_000.0);
+
+        System.out.printf("batched transfers/sec: %.0f (batches of %d), single transfers/sec: %.0f%n",
+                batchPerSecond, BENCHMARK_BATCH_SIZE, singlePerSecond);
+    }
+
+    private List<Account> accounts() {
+        return List.of(a, b, c, closed);
+    }
+
+    private void assertBalance(Account account, long expected) {
+        assertEquals(Money.of(BigDecimal.valueOf(expected)),
+                accountRepository.findById(account.getId()).orElseThrow().getBalance());
+    }
+
+    private TransferRequest randomTransfer() {
+        List<Account> open = List.of(a, b, c);
+        int from = ThreadLocalRandom.current().nextInt(open.size());
+        int to = (from + 1 + ThreadLocalRandom.current().nextInt(open.size() - 1)) % open.size();
+        return transfer(open.get(from), open.get(to), ThreadLocalRandom.current().nextInt(1, 20));
+    }
+
+    private static TransferRequest transfer(Account from, Account to, long amount) {
+        return transfer(from.getAccountNumber(), to.getAccountNumber(), amount);
+    }
+
+    private static TransferRequest transfer(String from, String to, long amount) {
+        TransferRequest request = new TransferRequest();
+        request.setFromAccount(from);
+        request.setToAccount(to);
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setDescription("batch");
+        return request;
+    }
+}
@@ -0,0 +1,220 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.config.IdempotencyConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.IdempotencyRecordRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class IdempotencyServiceTests {
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private IdempotencyRecordRepository repository;
+    @Autowired
+    private IdempotencyConfig idempotencyConfig;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+
+    private User user;
+    private Account account;
+    private String idempotencyKey;
+    private final AtomicInteger runs = new AtomicInteger();
+
+    @BeforeEach
+    void createAccount() {
+        user = fixtures.createUser("Idempotency");
+        account = fixtures.createAccount(user, AccountType.SAVINGS);
+        idempotencyKey = TestFixtures.unique();
+    }
+
+    @AfterEach
+    void deleteAccount() {
+        repository.deleteById(scopedKey());
+        accountRepository.deleteById(account.getId());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void aRetryGetsTheStoredResponse() throws Exception {
+        ResponseEntity<?> first = execute(idempotencyService, request(10), true, this::credit);
+        ResponseEntity<?> retry = execute(idempotencyService, request(10), true, this::credit);
+
+        assertEquals(201, first.getStatusCode().value());
+        assertEquals(201, retry.getStatusCode().value());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(1, runs.get());
+        assertBalance(1010);
+
+        // Another instance has nothing cached and replays from the table
+        ResponseEntity<?> elsewhere = execute(newService(idempotencyConfig), request(10), true, this::credit);
+        assertEquals(201, elsewhere.getStatusCode().value());
+        assertEquals("true", elsewhere.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(objectMapper.writeValueAsString(first.getBody()), elsewhere.getBody());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void duplicatesRunningOnThisInstanceWaitForTheFirst() throws Exception {
+        var started = new CountDownLatch(1);
+        var finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+                execute(idempotencyService, request(10), true, () -> {
+                    started.countDown();
+                    await(finish);
+                    return credit();
+                }));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        CompletableFuture<ResponseEntity<?>> duplicate = CompletableFuture.supplyAsync(() ->
+                execute(idempotencyService, request(10), true, this::credit));
+        // The duplicate queues behind the first instead of answering 409 from the claimed row
+        Thread.sleep(200);
+        assertFalse(duplicate.isDone());
+        finish.countDown();
+
+        assertEquals(201, first.get(10, TimeUnit.SECONDS).getStatusCode().value());
+        assertEquals(201, duplicate.get(10, TimeUnit.SECONDS).getStatusCode().value());
+        assertEquals(1, runs.get());
+        assertBalance(1010);
+    }
+
+    @Test
+    void aKeyReusedForAnotherRequestIsRefused() {
+        execute(idempotencyService, request(10), true, this::credit);
+
+        ResponseEntity<?> other = execute(idempotencyService, request(20), true, this::credit);
+
+        assertEquals(422, other.getStatusCode().value());
+        assertEquals(1, runs.get());
+        assertBalance(1010);
+    }
+
+    @Test
+    void aCrashedRequestCanBeRetriedOnceItsLeaseRunsOut() {
+        assertThrows(Crash.class, () -> execute(idempotencyService, request(10), true, () -> {
+            credit();
+            throw new Crash();
+        }));
+        // The crash rolled the posting back with the transaction, the key is still claimed
+        assertBalance(1000);
+        assertEquals(409, execute(idempotencyService, request(10), true, this::credit).getStatusCode().value());
+
+        // Now the lease has run out
+        jdbcTemplate.update("UPDATE idempotency_keys SET claimed_until = claimed_until - INTERVAL '1 hour' " +
+                "WHERE idempotency_key = ?", scopedKey());
+        ResponseEntity<?> retry = execute(idempotencyService, request(10), true, this::credit);
+
+        assertEquals(201, retry.getStatusCode().value());
+        assertNull(retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertBalance(1010);
+    }
+
+    @Test
+    void aPostingIsRolledBackWhenItsKeyWasTakenOver() {
+        ResponseEntity<?> response = execute(idempotencyService, request(10), true, () -> {
+            ResponseEntity<?> posted = credit();
+            // As if the lease had run out and a retry had claimed the key while this request ran
+            jdbcTemplate.update("UPDATE idempotency_keys SET claimed_until = claimed_until + INTERVAL '1 second' " +
+                    "WHERE idempotency_key = ?", scopedKey());
+            return posted;
+        });
+
+        assertEquals(409, response.getStatusCode().value());
+        assertBalance(1000);
+    }
+
+    @Test
+    void aPostingOnAnotherThreadIsStoredAfterItCommits() {
+        ResponseEntity<?> first = execute(idempotencyService, request(10), false, this::credit);
+        ResponseEntity<?> retry = execute(newService(idempotencyConfig), request(10), false, this::credit);
+
+        assertEquals(201, first.getStatusCode().value());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals(1, runs.get());
+        assertBalance(1010);
+    }
+
+    private ResponseEntity<?> execute(IdempotencyService service, DepositRequest request, boolean postsOnCallingThread,
+                                      Supplier<ResponseEntity<?>> action) {
+        return service.execute(idempotencyKey, user.getId(), "deposit", request, postsOnCallingThread, action);
+    }
+
+    // A second instance with its own cache, sharing the table
+    private IdempotencyService newService(IdempotencyConfig config) {
+        return new IdempotencyService(repository, config, objectMapper, transactionManager);
+    }
+
+    // Stands in for a posting: one balance update, joining the caller's transaction when there is one
+    private ResponseEntity<?> credit() {
+        runs.incrementAndGet();
+        jdbcTemplate.update("UPDATE accounts SET balance = balance + 10 WHERE id = ?", account.getId());
+        return ResponseEntity.status(201).body(Map.of("run", runs.get()));
+    }
+
+    private DepositRequest request(long amount) {
+        DepositRequest request = new DepositRequest();
+        request.setAccountNumber(account.getAccountNumber());
+        request.setAmount(BigDecimal.valueOf(amount));
+        request.setDescription("idempotency");
+        request.setCategoryName("Salary");
+        return request;
+    }
+
+    private String scopedKey() {
+        return user.getId() + ":deposit:" + idempotencyKey;
+    }
+
+    private void assertBalance(long expected) {
+        assertEquals(Money.of(BigDecimal.valueOf(expected)),
+                accountRepository.findById(account.getId()).orElseThrow().getBalance());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Takes the request down without the failure handling a RuntimeException gets, like a killed process
+    private static final class Crash extends Error {
+    }
+}
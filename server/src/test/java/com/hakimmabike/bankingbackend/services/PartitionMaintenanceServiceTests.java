@@ -0,0 +1,82 @@
+package com.hakimmabike.bankingbackend.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class PartitionMaintenanceServiceTests {
+    // Months long before any real data, so the test partitions can't hold rows or clash with maintenance
+    private static final YearMonth JANUARY = YearMonth.of(1990, 1);
+    private static final YearMonth FEBRUARY = YearMonth.of(1990, 2);
+
+    @Autowired
+    private PartitionMaintenanceService partitionMaintenance;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void dropTestPartitions() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS transactions_1990_01");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS transactions_1990_02");
+    }
+
+    @Test
+    void maintenanceCreatesTheMonthsAhead() {
+        partitionMaintenance.maintain();
+
+        YearMonth now = YearMonth.now();
+        for (String table : List.of("transactions", "transfers")) {
+            List<String> partitions = partitionMaintenance.getAttachedPartitions(table);
+            for (int i = 0; i <= 3; i++) {
+                assertTrue(partitions.contains(table + "_" + now.plusMonths(i).toString().replace('-', '_')),
+                        partitions::toString);
+            }
+        }
+    }
+
+    @Test
+    void monthsBeforeTheCutoffAreDetached() {
+        partitionMaintenance.createPartitions("transactions", JANUARY, FEBRUARY);
+
+        List<String> detached = partitionMaintenance.detachPartitionsBefore("transactions", FEBRUARY);
+
+        assertEquals(List.of("transactions_1990_01"), detached);
+        List<String> attached = partitionMaintenance.getAttachedPartitions("transactions");
+        assertFalse(attached.contains("transactions_1990_01"));
+        assertTrue(attached.contains("transactions_1990_02"));
+        // Detached, not dropped
+        assertNotNull(jdbcTemplate.queryForObject("SELECT to_regclass('transactions_1990_01')::text", String.class));
+    }
+
+    @Test
+    void dateRangeReadsOnlyTouchTheirMonths() {
+        partitionMaintenance.createPartitions("transactions", JANUARY, FEBRUARY);
+
+        // The shape of findByTransactionDateBetween
+        String plan = jdbcTemplate.queryForList(
+                        "EXPLAIN SELECT * FROM transactions WHERE transaction_date BETWEEN '1990-02-03' AND '1990-02-20'",
+                        String.class).stream()
+                .collect(Collectors.joining("\n"));
+
+        assertTrue(plan.contains("transactions_1990_02"), plan);
+        assertFalse(plan.contains("transactions_1990_01"), plan);
+        assertFalse(plan.contains("transactions_default"), plan);
+        assertFalse(plan.contains("transactions_" + YearMonth.now().toString().replace('-', '_')), plan);
+    }
+
+    @Test
+    void onlyPartitionedTablesAreAccepted() {
+        assertThrows(IllegalArgumentException.class, () -> partitionMaintenance.getAttachedPartitions("accounts"));
+        assertThrows(IllegalArgumentException.class,
+                () -> partitionMaintenance.createPartitions("accounts; DROP TABLE users", JANUARY, JANUARY));
+    }
+}
@@ -0,0 +1,80 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.config.PasswordHashingConfig;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashingExecutorTests {
+    private static final int CALLERS = 64;
+    private static final int LOGINS_PER_CALLER = 10;
+
+    // A login flood only queues up to the bound, the rest is refused at once and callers are never held
+    @Test
+    void loginFloodIsBoundedAndCallersAreReleased() throws InterruptedException {
+        var encoder = new BCryptPasswordEncoder();
+        var config = new PasswordHashingConfig();
+        config.setThreads(2);
+        config.setQueueCapacity(8);
+        var hashing = new PasswordHashingExecutor(encoder, config, new SimpleMeterRegistry());
+        var stored = encoder.encode("correct horse");
+
+        Queue<CompletableFuture<Boolean>> accepted = new ConcurrentLinkedQueue<>();
+        Queue<Long> submitNanos = new ConcurrentLinkedQueue<>();
+        var rejected = new AtomicInteger();
+        var start = new CountDownLatch(1);
+        List<Thread> callers = new ArrayList<>();
+        for (int c = 0; c < CALLERS; c++) {
+            Thread caller = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < LOGINS_PER_CALLER; i++) {
+                    long began = System.nanoTime();
+                    try {
+                        accepted.add(hashing.matches("correct horse", stored));
+                    } catch (ServiceBusyException e) {
+                        rejected.incrementAndGet();
+                    }
+                    submitNanos.add(System.nanoTime() - began);
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        start.countDown();
+        for (Thread caller : callers) {
+            caller.join();
+        }
+
+        accepted.forEach(future -> assertTrue(future.join()));
+        assertTrue(rejected.get() > 0);
+        assertEquals(CALLERS * LOGINS_PER_CALLER, accepted.size() + rejected.get());
+
+        // A request thread spends microseconds handing off a login, not the BCrypt time
+        List<Long> sorted = new ArrayList<>(submitNanos);
+        sorted.sort(null);
+        double p99Millis = sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1) / 1_000_000.0;
+        long hashStart = System.nanoTime();
+        encoder.matches("correct horse", stored);
+        double hashMillis = (System.nanoTime() - hashStart) / 1_000_000.0;
+        System.out.printf("accepted %d, rejected %d, p99 caller hold %.2f ms, one BCrypt check %.2f ms%n",
+                accepted.size(), rejected.get(), p99Millis, hashMillis);
+        assertTrue(p99Millis < hashMillis);
+        hashing.stop();
+    }
+}
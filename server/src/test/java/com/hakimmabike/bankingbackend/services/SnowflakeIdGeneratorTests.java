@@ -0,0 +1,89 @@
+package com.hakimmabike.bankingbackend.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTests {
+    private static final int THREADS = 8;
+    private static final int IDS_PER_THREAD = 500_000;
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws InterruptedException {
+        var generator = new SnowflakeIdGenerator(1);
+        long[][] perThread = new long[THREADS][IDS_PER_THREAD];
+        var start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long[] ids = perThread[t];
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = generator.nextId();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Each thread sees strictly increasing ids
+        for (long[] ids : perThread) {
+            for (int i = 1; i < ids.length; i++) {
+                assertTrue(ids[i] > ids[i - 1]);
+            }
+        }
+
+        // And no id was handed out twice, 4 million ids in total
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(perThread[t], 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertNotEquals(all[i - 1], all[i]);
+        }
+    }
+
+    @Test
+    void nodesNeverShareIds() {
+        var first = new SnowflakeIdGenerator(1);
+        var second = new SnowflakeIdGenerator(2);
+        for (int i = 0; i < 100_000; i++) {
+            assertNotEquals(first.nextId(), second.nextId());
+        }
+    }
+
+    @Test
+    void transactionNumbersAreFixedWidthAndOrdered() {
+        var generator = new SnowflakeIdGenerator(0);
+        String previous = generator.nextTransactionNumber();
+        for (int i = 0; i < 10_000; i++) {
+            String next = generator.nextTransactionNumber();
+            assertTrue(next.startsWith("TXN"));
+            assertEquals(22, next.length());
+            assertTrue(next.compareTo(previous) > 0);
+            previous = next;
+        }
+        assertEquals(13, generator.nextCode().length());
+    }
+
+    @Test
+    void rejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(1024));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
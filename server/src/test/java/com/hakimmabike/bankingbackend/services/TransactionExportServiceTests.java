@@ -0,0 +1,142 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.exception.ServiceBusyException;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class TransactionExportServiceTests {
+    private static final int TRANSACTIONS = 1200;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionExportService exportService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+
+    private User user;
+    private Account account;
+    private TransactionCategory category;
+    private List<Transaction> transactions;
+
+    @BeforeEach
+    void createHistory() {
+        user = fixtures.createUser("Export");
+        account = fixtures.createAccount(user, AccountType.SAVINGS);
+        category = fixtures.createCategory("Export", CategoryType.INCOME);
+
+        var start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Transaction> rows = new ArrayList<>();
+        for (int i = 0; i < TRANSACTIONS; i++) {
+            rows.add(Transaction.builder()
+                    .transactionNumber("EXP-" + System.nanoTime() + "-" + i)
+                    .transactionType(TransactionType.DEPOSIT.name())
+                    .amount(Money.of(BigDecimal.ONE))
+                    .balanceAfterTransaction(Money.of(BigDecimal.valueOf(1000 + i)))
+                    .description("rent, \"march\"") // needs quoting in CSV
+                    .code("NULL")
+                    .sender(false)
+                    .receiver(false)
+                    .accountNumber(account.getAccountNumber())
+                    .status(TransactionStatus.COMPLETED)
+                    .transactionDate(start.plusMinutes(i))
+                    .account(account)
+                    .transactionCategory(category)
+                    .build());
+        }
+        transactions = transactionRepository.saveAll(rows);
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        transactionRepository.deleteAllByAccount(account);
+        accountRepository.deleteAllById(List.of(account.getId()));
+        categoryRepository.delete(category);
+        userRepository.delete(user);
+    }
+
+    @Test
+    void csvHasEveryTransactionOldestFirst() throws IOException {
+        List<String> lines = export(TransactionExportService.Format.CSV);
+
+        assertEquals(TRANSACTIONS + 1, lines.size());
+        assertTrue(lines.get(0).startsWith("id,transaction_number,transaction_date"));
+        assertTrue(lines.get(1).startsWith(transactions.get(0).getId() + ","));
+        assertTrue(lines.get(1).contains(",\"rent, \"\"march\"\"\","));
+        assertTrue(lines.get(TRANSACTIONS).startsWith(transactions.get(TRANSACTIONS - 1).getId() + ","));
+    }
+
+    @Test
+    void ndjsonHasOneObjectPerLine() throws IOException {
+        List<String> lines = export(TransactionExportService.Format.NDJSON);
+
+        assertEquals(TRANSACTIONS, lines.size());
+        var first = objectMapper.readTree(lines.get(0));
+        assertEquals(transactions.get(0).getId().longValue(), first.get("id").asLong());
+        assertEquals(category.getName(), first.get("category").asText());
+        assertEquals("rent, \"march\"", first.get("description").asText());
+    }
+
+    @Test
+    void exportSlotsAreBounded() throws IOException {
+        var first = exportService.acquireSlot();
+        var second = exportService.acquireSlot();
+        assertThrows(ServiceBusyException.class, exportService::acquireSlot);
+        // Finishing an export hands its slot back
+        exportService.export(first, user.getId(), account.getAccountNumber(), TransactionExportService.Format.CSV, new ByteArrayOutputStream());
+        var third = exportService.acquireSlot();
+        // A slot whose export never ran is released by the request's completion callback, releasing it again is harmless
+        second.release();
+        second.release();
+        exportService.export(third, user.getId(), account.getAccountNumber(), TransactionExportService.Format.CSV, new ByteArrayOutputStream());
+        third.release();
+        // Still two slots, not more
+        var fourth = exportService.acquireSlot();
+        var fifth = exportService.acquireSlot();
+        assertThrows(ServiceBusyException.class, exportService::acquireSlot);
+        fourth.release();
+        fifth.release();
+    }
+
+    private List<String> export(TransactionExportService.Format format) throws IOException {
+        var out = new ByteArrayOutputStream();
+        exportService.export(exportService.acquireSlot(), user.getId(), null, format, out);
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
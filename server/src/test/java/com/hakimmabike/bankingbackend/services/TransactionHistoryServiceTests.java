@@ -0,0 +1,143 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionDto;
+import com.hakimmabike.bankingbackend.dto.transaction.TransactionPageDto;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.TransactionCategory;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.*;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionCategoryRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class TransactionHistoryServiceTests {
+    private static final int TRANSACTIONS_PER_ACCOUNT = 65;
+    private static final int PAGE_SIZE = 50;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionHistoryService historyService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransactionCategoryRepository categoryRepository;
+
+    private User user;
+    private List<Account> accounts;
+    private TransactionCategory category;
+    private List<Transaction> transactions;
+
+    @BeforeEach
+    void createHistory() {
+        user = fixtures.createUser("History");
+        accounts = List.of(fixtures.createAccount(user, AccountType.SAVINGS), fixtures.createAccount(user, AccountType.DEBIT));
+        category = fixtures.createCategory("History", CategoryType.INCOME);
+
+        // Pairs of transactions share a timestamp, so pages must break ties on id
+        var start = LocalDateTime.of(2024, 1, 1, 12, 0);
+        List<Transaction> rows = new ArrayList<>();
+        for (Account account : accounts) {
+            for (int i = 0; i < TRANSACTIONS_PER_ACCOUNT; i++) {
+                var type = i % 3 == 0 ? TransactionType.WITHDRAWAL : TransactionType.DEPOSIT;
+                rows.add(Transaction.builder()
+                        .transactionNumber("HIST-" + System.nanoTime() + "-" + rows.size())
+                        .transactionType(type.name())
+                        .amount(Money.of(BigDecimal.ONE))
+                        .balanceAfterTransaction(Money.of(BigDecimal.valueOf(1000)))
+                        .description("history")
+                        .code("NULL")
+                        .sender(false)
+                        .receiver(false)
+                        .accountNumber(account.getAccountNumber())
+                        .status(TransactionStatus.COMPLETED)
+                        .transactionDate(start.plusMinutes(i / 2))
+                        .account(account)
+                        .transactionCategory(category)
+                        .build());
+            }
+        }
+        transactions = transactionRepository.saveAll(rows);
+    }
+
+    @AfterEach
+    void deleteHistory() {
+        accounts.forEach(transactionRepository::deleteAllByAccount);
+        accountRepository.deleteAllById(accounts.stream().map(Account::getId).toList());
+        categoryRepository.delete(category);
+        userRepository.delete(user);
+    }
+
+    @Test
+    void pagesCoverTheWholeHistoryNewestFirst() {
+        List<TransactionDto> seen = new ArrayList<>();
+        TransactionHistoryService.Cursor cursor = null;
+        int pages = 0;
+        do {
+            TransactionPageDto page = historyService.getPage(user.getId(), cursor, PAGE_SIZE, null, null, null, null, null);
+            assertTrue(page.getTransactions().size() <= PAGE_SIZE);
+            seen.addAll(page.getTransactions());
+            cursor = page.getNextCursor() == null ? null : TransactionHistoryService.Cursor.decode(page.getNextCursor());
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(transactions.size(), seen.size());
+        assertEquals(transactions.size(), new HashSet<>(seen.stream().map(TransactionDto::getId).toList()).size());
+
+        List<Long> expected = transactions.stream()
+                .sorted(Comparator.comparing(Transaction::getTransactionDate).thenComparing(Transaction::getId).reversed())
+                .map(Transaction::getId)
+                .toList();
+        assertEquals(expected, seen.stream().map(TransactionDto::getId).toList());
+        assertEquals(category.getName(), seen.get(0).getCategoryName());
+    }
+
+    @Test
+    void filtersNarrowThePage() {
+        var account = accounts.get(0);
+        TransactionPageDto page = historyService.getPage(user.getId(), null, 200, account.getAccountNumber(),
+                TransactionType.WITHDRAWAL, category.getName(), null, null);
+
+        long expected = transactions.stream()
+                .filter(t -> t.getAccountNumber().equals(account.getAccountNumber()))
+                .filter(t -> t.getTransactionType().equals(TransactionType.WITHDRAWAL.name()))
+                .count();
+        assertEquals(expected, page.getTransactions().size());
+        assertNull(page.getNextCursor());
+        assertTrue(historyService.getPage(user.getId(), null, 10, null, null, "No such category", null, null)
+                .getTransactions().isEmpty());
+    }
+
+    @Test
+    void cursorRoundTrips() {
+        var cursor = new TransactionHistoryService.Cursor(LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123456000), 42L);
+        assertEquals(cursor, TransactionHistoryService.Cursor.decode(cursor.encode()));
+        assertThrows(IllegalArgumentException.class, () -> TransactionHistoryService.Cursor.decode("not-a-cursor"));
+    }
+}
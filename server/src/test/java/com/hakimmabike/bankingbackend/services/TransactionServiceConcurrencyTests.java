@@ -0,0 +1,392 @@
+package com.hakimmabike.bankingbackend.services;
+
+import com.hakimmabike.bankingbackend.TestFixtures;
+import com.hakimmabike.bankingbackend.config.DepositLedgerConfig;
+import com.hakimmabike.bankingbackend.config.LaneConfig;
+import com.hakimmabike.bankingbackend.dto.transaction.DepositRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.WithdrawRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferRequest;
+import com.hakimmabike.bankingbackend.dto.transaction.TransferStatusDto;
+import com.hakimmabike.bankingbackend.entity.Account;
+import com.hakimmabike.bankingbackend.entity.Money;
+import com.hakimmabike.bankingbackend.entity.Transaction;
+import com.hakimmabike.bankingbackend.entity.Transfer;
+import com.hakimmabike.bankingbackend.entity.User;
+import com.hakimmabike.bankingbackend.enums.AccountType;
+import com.hakimmabike.bankingbackend.enums.TransactionStatus;
+import com.hakimmabike.bankingbackend.enums.TransactionType;
+import com.hakimmabike.bankingbackend.exception.InsufficientFundsException;
+import com.hakimmabike.bankingbackend.repository.AccountRepository;
+import com.hakimmabike.bankingbackend.repository.TransactionRepository;
+import com.hakimmabike.bankingbackend.repository.TransferRepository;
+import com.hakimmabike.bankingbackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@Import(TestFixtures.class)
+class TransactionServiceConcurrencyTests {
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 250;
+    private static final BigDecimal OPENING_BALANCE = BigDecimal.valueOf(1000);
+    private static final int DEPOSIT_THREADS = 32;
+    private static final int DEPOSITS_PER_THREAD = 100;
+
+    @Autowired
+    private TestFixtures fixtures;
+    @Autowired
+    private TransactionService transactionService;
+    @Autowired
+    private AccountRepository accountRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private TransferRepository transferRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private AccountService accountService;
+    @Autowired
+    private BalanceShardService balanceShardService;
+    @Autowired
+    private AsyncTransferService asyncTransferService;
+
+    private User user;
+    private final List<Account> accounts = new ArrayList<>();
+
+    @BeforeEach
+    void createAccounts() {
+        user = fixtures.createUser("Stress");
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(fixtures.createAccount(user, AccountType.SAVINGS, Money.of(OPENING_BALANCE)));
+        }
+    }
+
+    @AfterEach
+    void deleteAccounts() {
+        for (Account account : accounts) {
+            transactionRepository.deleteAllByAccount(account);
+            transferRepository.deleteAllBySenderAccount(account);
+            transferRepository.deleteAllByReceiverAccount(account);
+        }
+        // By id, the entities here are detached and their versions are stale by now
+        accountRepository.deleteAllById(accounts.stream().map(Account::getId).toList());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void guardedTransfersDoNotLoseUpdates() throws InterruptedException {
+        AtomicInteger completed = new AtomicInteger();
+        run(() -> {
+            transactionService.transfer(randomTransfer());
+            completed.incrementAndGet();
+        });
+
+        // Money is only ever moved between the accounts, so the total must be unchanged
+        BigDecimal total = accountRepository.findAllById(accounts.stream().map(Account::getId).toList())
+                .stream()
+                .map(account -> account.getBalance().toBigDecimal())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, OPENING_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS)).compareTo(total));
+        accountRepository.findAllById(accounts.stream().map(Account::getId).toList())
+                .forEach(a -> assertTrue(a.getBalance().signum() >= 0, "Balance went negative"));
+        assertEquals(completed.get() * 2L,
+                transactionRepository.findByAccountIn(accounts).size());
+    }
+
+    // Throughput comparisons below only run with -Pbenchmark, they print their numbers instead of asserting on timing
+
+    @Test
+    @Tag("benchmark")
+    void guardedTransfersAgainstReadModifyWrite() throws InterruptedException {
+        double guardedPerSecond = run(() -> transactionService.transfer(randomTransfer()));
+        // The old read-compare-save path, writing the same transfer and ledger rows
+        double readModifyWritePerSecond = run(this::readModifyWriteTransfer);
+
+        System.out.printf("guarded transfers/sec: %.0f, read-modify-write transfers/sec: %.0f%n",
+                guardedPerSecond, readModifyWritePerSecond);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void lanesAgainstDirectTransfers() throws InterruptedException {
+        LaneConfig config = new LaneConfig();
+        config.setEnabled(true);
+        AccountLaneExecutor lanes = new AccountLaneExecutor(transactionService, config, transactionManager,
+                new DepositLedgerWriter(transactionService, new DepositLedgerConfig(), transactionManager));
+        lanes.start();
+        double lanesPerSecond;
+        try {
+            lanesPerSecond = run(() -> lanes.transfer(randomTransfer()));
+        } finally {
+            lanes.stop();
+        }
+        double directPerSecond = run(() -> transactionService.transfer(randomTransfer()));
+
+        System.out.printf("lane transfers/sec: %.0f, direct transfers/sec: %.0f%n", lanesPerSecond, directPerSecond);
+    }
+
+    private double run(Runnable transfer) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    try {
+                        transfer.run();
+                    } catch (InsufficientFundsException ignored) {
+                        // Expected once an account has been drained
+                    } catch (RuntimeException ignored) {
+                        // The baseline path fails on lock conflicts, it only has to be timed
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return THREADS * TRANSFERS_PER_THREAD / seconds;
+    }
+
+    @Test
+    void groupCommittedDepositsAreAllApplied() throws InterruptedException {
+        DepositLedgerConfig config = new DepositLedgerConfig();
+        config.setEnabled(true);
+        DepositLedgerWriter writer = new DepositLedgerWriter(transactionService, config, transactionManager);
+        writer.start();
+        try {
+            runDeposits(request -> writer.deposit(user.getId(), request, null).join(), new ConcurrentLinkedQueue<>(),
+                    accounts);
+        } finally {
+            writer.stop();
+        }
+
+        // Every deposit is 1, so the run adds exactly one per deposit
+        int deposits = DEPOSIT_THREADS * DEPOSITS_PER_THREAD;
+        BigDecimal total = accountRepository.findAllById(accounts.stream().map(Account::getId).toList())
+                .stream()
+                .map(account -> account.getBalance().toBigDecimal())
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(0, OPENING_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS))
+                .add(BigDecimal.valueOf(deposits)).compareTo(total));
+        assertEquals(deposits, transactionRepository.findByAccountIn(accounts).size());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void groupCommitAgainstDirectDeposits() throws InterruptedException {
+        DepositLedgerConfig config = new DepositLedgerConfig();
+        config.setEnabled(true);
+        DepositLedgerWriter writer = new DepositLedgerWriter(transactionService, config, transactionManager);
+        writer.start();
+        Queue<Long> groupLatencies = new ConcurrentLinkedQueue<>();
+        double groupPerSecond;
+        try {
+            groupPerSecond = runDeposits(request -> writer.deposit(user.getId(), request, null).join(), groupLatencies,
+                    accounts);
+        } finally {
+            writer.stop();
+        }
+
+        // The current path, one transaction per deposit
+        Queue<Long> directLatencies = new ConcurrentLinkedQueue<>();
+        double directPerSecond = runDeposits(request -> transactionService.deposit(user.getId(), request),
+                directLatencies, accounts);
+
+        System.out.printf("group-commit deposits/sec: %.0f (p99 %.2f ms), direct deposits/sec: %.0f (p99 %.2f ms)%n",
+                groupPerSecond, p99Millis(groupLatencies), directPerSecond, p99Millis(directLatencies));
+    }
+
+    @Test
+    void shardedAccountKeepsExactBalance() throws InterruptedException {
+        Account hot = accounts.get(0);
+        balanceShardService.setShardCount(hot.getId(), 8);
+        runDeposits(request -> transactionService.deposit(user.getId(), request), new ConcurrentLinkedQueue<>(),
+                List.of(hot));
+
+        // The balance endpoints see the account row and the shards together
+        BigDecimal expected = OPENING_BALANCE.add(BigDecimal.valueOf((long) DEPOSIT_THREADS * DEPOSITS_PER_THREAD));
+        assertEquals(0, expected.compareTo(accountService.getAccountBalance(hot.getId(), user.getId()).getBalance()));
+        assertEquals(0, expected.add(OPENING_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS - 1)))
+                .compareTo(accountService.getTotalBalance(user.getId()).getBalance()));
+
+        // Withdrawing everything needs the money in the shards, so the debit has to compact them first
+        WithdrawRequest withdrawal = new WithdrawRequest();
+        withdrawal.setAccountNumber(hot.getAccountNumber());
+        withdrawal.setAmount(expected);
+        withdrawal.setDescription("stress");
+        transactionService.withdraw(withdrawal);
+        assertEquals(0, BigDecimal.ZERO.compareTo(accountService.getAccountBalance(hot.getId(), user.getId()).getBalance()));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void shardedAgainstSingleRowCredits() throws InterruptedException {
+        Account hot = accounts.get(0);
+        Consumer<DepositRequest> deposit = request -> transactionService.deposit(user.getId(), request);
+
+        // Every credit to one account waits on the same row
+        double singleRowPerSecond = runDeposits(deposit, new ConcurrentLinkedQueue<>(), List.of(hot));
+
+        balanceShardService.setShardCount(hot.getId(), 8);
+        double shardedPerSecond = runDeposits(deposit, new ConcurrentLinkedQueue<>(), List.of(hot));
+
+        System.out.printf("single-row credits/sec: %.0f, 8-shard credits/sec: %.0f%n",
+                singleRowPerSecond, shardedPerSecond);
+    }
+
+    @Test
+    void asyncTransfersEndCompletedOrFailed() {
+        TransferRequest affordable = randomTransfer();
+        TransferRequest tooLarge = randomTransfer();
+        tooLarge.setAmount(OPENING_BALANCE.multiply(BigDecimal.valueOf(ACCOUNTS + 1)));
+
+        TransferStatusDto accepted = transactionService.submitTransfer(affordable);
+        TransferStatusDto rejected = transactionService.submitTransfer(tooLarge);
+        assertEquals("PENDING", accepted.getStatus());
+
+        // The background workers may get there first, either way nothing is left pending
+        while (asyncTransferService.processBatch() > 0) {
+            // keep going until no pending transfers are left to claim
+        }
+        awaitSettled(accepted.getId());
+        awaitSettled(rejected.getId());
+
+        assertEquals("COMPLETED", transactionService.getTransferStatus(user.getId(), accepted.getId()).getStatus());
+        TransferStatusDto failed = transactionService.getTransferStatus(user.getId(), rejected.getId());
+        assertEquals("FAILED", failed.getStatus());
+        assertEquals("Insufficient funds for transfer", failed.getFailureReason());
+        assertEquals(2, transactionRepository.findByAccountIn(accounts).size());
+    }
+
+    // A worker may still hold the transfer in an uncommitted batch
+    private void awaitSettled(Long transferId) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (transactionService.getTransferStatus(user.getId(), transferId).getStatus().equals("PENDING")) {
+            assertTrue(System.nanoTime() < deadline, "Transfer " + transferId + " is still pending");
+            Thread.onSpinWait();
+        }
+    }
+
+    private double runDeposits(Consumer<DepositRequest> deposit, Queue<Long> latencies, List<Account> targets)
+            throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(DEPOSIT_THREADS);
+        AtomicInteger failures = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int t = 0; t < DEPOSIT_THREADS; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < DEPOSITS_PER_THREAD; i++) {
+                    DepositRequest request = new DepositRequest();
+                    request.setAccountNumber(targets.get(ThreadLocalRandom.current().nextInt(targets.size()))
+                            .getAccountNumber());
+                    request.setAmount(BigDecimal.ONE);
+                    request.setDescription("stress");
+                    long began = System.nanoTime();
+                    try {
+                        deposit.accept(request);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies.add(System.nanoTime() - began);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        assertEquals(0, failures.get());
+        return DEPOSIT_THREADS * DEPOSITS_PER_THREAD / seconds;
+    }
+
+    private static double p99Millis(Queue<Long> latencies) {
+        List<Long> sorted = latencies.stream().sorted().toList();
+        return sorted.get((int) Math.ceil(sorted.size() * 0.99) - 1) / 1_000_000.0;
+    }
+
+    private TransferRequest randomTransfer() {
+        int from = ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        int to = (from + 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        TransferRequest request = new TransferRequest();
+        request.setFromAccount(accounts.get(from).getAccountNumber());
+        request.setToAccount(accounts.get(to).getAccountNumber());
+        request.setAmount(BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(1, 20)));
+        request.setDescription("stress");
+        return request;
+    }
+
+    private void readModifyWriteTransfer() {
+        TransferRequest request = randomTransfer();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Account from = accountRepository.findByAccountNumber(request.getFromAccount()).orElseThrow();
+            Account to = accountRepository.findByAccountNumber(request.getToAccount()).orElseThrow();
+            Money amount = Money.of(request.getAmount());
+            if (from.getBalance().isLessThan(amount)) {
+                throw new InsufficientFundsException("Insufficient funds for transfer");
+            }
+            from.setBalance(from.getBalance().minus(amount));
+            to.setBalance(to.getBalance().plus(amount));
+            accountRepository.save(from);
+            accountRepository.save(to);
+            // The same rows a guarded transfer writes: the transfer and one ledger row per side
+            LocalDateTime now = LocalDateTime.now();
+            Transfer transfer = transferRepository.save(Transfer.builder()
+                    .amount(amount)
+                    .description(request.getDescription())
+                    .status(TransactionStatus.COMPLETED)
+                    .transferDate(now)
+                    .createdAt(now)
+                    .senderAccount(from)
+                    .receiverAccount(to)
+                    .build());
+            transactionRepository.saveAll(List.of(
+                    ledgerRow(transfer, from, amount, from.getBalance(), true, now),
+                    ledgerRow(transfer, to, amount, to.getBalance(), false, now)));
+        });
+    }
+
+    private static Transaction ledgerRow(Transfer transfer, Account account, Money amount, Money balanceAfter,
+                                         boolean sender, LocalDateTime date) {
+        return Transaction.builder()
+                .transactionNumber("RMW-" + TestFixtures.unique())
+                .transactionType(TransactionType.TRANSFER.name())
+                .amount(amount)
+                .balanceAfterTransaction(balanceAfter)
+                .description("stress")
+                .code("NULL")
+                .sender(sender)
+                .receiver(!sender)
+                .accountNumber(account.getAccountNumber())
+                .status(TransactionStatus.COMPLETED)
+                .transactionDate(date)
+                .account(account)
+                .transfer(transfer)
+                .build();
+    }
+}